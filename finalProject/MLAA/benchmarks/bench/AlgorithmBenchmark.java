@@ -0,0 +1,45 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/*
+ * The whole algorithm, finding and blending: the original referenceAlgorithm, algorithm() and
+ * parallelAlgorithm() on the common pool. Like BlendBenchmark, every call starts from a fresh copy
+ * of the frame since the image is blended in place.
+ */
+public class AlgorithmBenchmark extends FrameBenchmark {
+
+    private Object algorithm;
+    private BufferedImage working;
+
+    @Setup
+    public void setUp() throws Throwable {
+        loadFrame();
+        algorithm = Mlaa.NEW_ALGORITHM.invoke();
+        working = Frames.blank(frame);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshCopy() {
+        Frames.copy(frame, working);
+    }
+
+    @Benchmark
+    public Object referenceAlgorithm() throws Throwable {
+        return Mlaa.REFERENCE_ALGORITHM.invoke(algorithm, working);
+    }
+
+    @Benchmark
+    public Object algorithm() throws Throwable {
+        return Mlaa.ALGORITHM_RUN.invoke(algorithm, working);
+    }
+
+    @Benchmark
+    public Object parallelAlgorithm() throws Throwable {
+        return Mlaa.PARALLEL_ALGORITHM.invoke(algorithm, working, ForkJoinPool.commonPool());
+    }
+}
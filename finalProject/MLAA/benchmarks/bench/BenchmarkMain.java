@@ -0,0 +1,85 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with the GC profiler and finishes with a table of time and allocation per
+ * pixel, which can be compared between frames of any size.
+ *
+ * Usage (from finalProject/MLAA):
+ *   mvn -P jmh package
+ *   java -jar target/benchmarks.jar [JMH options]
+ *
+ * Any JMH option works, e.g. "Detection" to run only DetectionBenchmark, or
+ * "-p image=noise-4k,tekken.png" to run on only those frames.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            // nothing is run, JMH just prints something
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        report(results);
+    }
+
+    private static void report(Collection<RunResult> results) throws Exception {
+
+        // frames are only loaded again to count their pixels
+        Map<String, Long> pixels = new HashMap<String, Long>();
+        List<String> lines = new ArrayList<String>();
+
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String image = result.getParams().getParam("image");
+            if (image == null) {
+                continue;
+            }
+            Long count = pixels.get(image);
+            if (count == null) {
+                BufferedImage frame = Frames.load(image);
+                count = (long) frame.getWidth() * frame.getHeight();
+                pixels.put(image, count);
+            }
+
+            Result<?> time = result.getPrimaryResult();
+            Result<?> allocated = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (!time.getScoreUnit().startsWith("ns/")) {
+                // the unit was changed with -tu; nothing sensible to divide
+                continue;
+            }
+            double nanos = time.getScore();
+            lines.add(String.format(Locale.ROOT, "%-52s %-20s %10.3f %12.3f",
+                    benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1), image,
+                    nanos / count, allocated == null ? Double.NaN : allocated.getScore() / count));
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-52s %-20s %10s %12s", "Benchmark", "image", "ns/pixel",
+                "bytes/pixel"));
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/*
+ * Blending the patterns once they have been found: AlgorithmMLAA.writingPatterns, and
+ * PatternBlender serially and on the common pool.
+ *
+ * Blending changes the image it works on, so every call starts from a fresh copy of the frame.
+ * The copy is made outside the measured time; it is a single array copy, which is small next to
+ * blending even the smallest test image.
+ */
+public class BlendBenchmark extends FrameBenchmark {
+
+    private Object algorithm;
+    private Object blender;
+    private Object masks;
+    private BufferedImage working;
+    private Object workingRaster;
+
+    @Setup
+    public void setUp() throws Throwable {
+        loadFrame();
+
+        // find the patterns once; blending only reads them
+        algorithm = Mlaa.NEW_ALGORITHM.invoke();
+        Mlaa.LOCATING_PATTERN_1.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_2.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_3.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_4.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_5.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_6.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_7.invoke(algorithm, frame);
+        Mlaa.LOCATING_PATTERN_8.invoke(algorithm, frame);
+
+        Object detector = Mlaa.NEW_DETECTOR.invoke(50);
+        masks = Mlaa.DETECT.invoke(detector, Mlaa.NEW_RASTER.invoke(frame), Mlaa.NEW_LUMINANCE.invoke(),
+                Mlaa.NEW_MASKS.invoke(), null);
+        blender = Mlaa.NEW_BLENDER.invoke();
+
+        // a TYPE_3BYTE_BGR raster works on the image's own bytes, so it sees every fresh copy
+        working = Frames.blank(frame);
+        workingRaster = Mlaa.NEW_RASTER.invoke(working);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshCopy() {
+        Frames.copy(frame, working);
+    }
+
+    @Benchmark
+    public Object writingPatterns() throws Throwable {
+        return Mlaa.WRITING_PATTERNS.invoke(algorithm, working);
+    }
+
+    @Benchmark
+    public Object blend() throws Throwable {
+        Mlaa.BLEND.invoke(blender, workingRaster, masks);
+        return working;
+    }
+
+    @Benchmark
+    public Object parallelBlend() throws Throwable {
+        Mlaa.PARALLEL_BLEND.invoke(blender, workingRaster, masks, ForkJoinPool.commonPool());
+        return working;
+    }
+}
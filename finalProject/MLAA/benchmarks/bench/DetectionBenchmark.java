@@ -0,0 +1,97 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Finding the patterns: each of the eight locatingPattern methods of AlgorithmMLAA on its own,
+ * and FusedPatternDetector finding all eight at once with a luminance plane and masks reused from
+ * call to call, the way MLAAEngine uses it.
+ *
+ * None of these change the frame, so it is shared by every call.
+ */
+public class DetectionBenchmark extends FrameBenchmark {
+
+    private Object algorithm;
+    private Object detector;
+    private Object raster;
+    private Object luminance;
+    private Object masks;
+
+    @Setup
+    public void setUp() throws Throwable {
+        loadFrame();
+        algorithm = Mlaa.NEW_ALGORITHM.invoke();
+        detector = Mlaa.NEW_DETECTOR.invoke(50);
+        raster = Mlaa.NEW_RASTER.invoke(frame);
+        luminance = Mlaa.NEW_LUMINANCE.invoke();
+        masks = Mlaa.NEW_MASKS.invoke();
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Mlaa.forgetPatterns(algorithm);
+    }
+
+    @Benchmark
+    public Object locatingPattern1() throws Throwable {
+        Mlaa.LOCATING_PATTERN_1.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern2() throws Throwable {
+        Mlaa.LOCATING_PATTERN_2.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern3() throws Throwable {
+        Mlaa.LOCATING_PATTERN_3.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern4() throws Throwable {
+        Mlaa.LOCATING_PATTERN_4.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern5() throws Throwable {
+        Mlaa.LOCATING_PATTERN_5.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern6() throws Throwable {
+        Mlaa.LOCATING_PATTERN_6.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern7() throws Throwable {
+        Mlaa.LOCATING_PATTERN_7.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object locatingPattern8() throws Throwable {
+        Mlaa.LOCATING_PATTERN_8.invoke(algorithm, frame);
+        Mlaa.forgetPatterns(algorithm);
+        return algorithm;
+    }
+
+    @Benchmark
+    public Object fusedDetect() throws Throwable {
+        return Mlaa.DETECT.invoke(detector, raster, luminance, masks, null);
+    }
+}
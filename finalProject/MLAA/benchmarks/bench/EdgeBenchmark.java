@@ -0,0 +1,43 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+/*
+ * Computing the luminance and edge bits of every pixel, with the scalar EdgeKernel and with the
+ * default one, which is the Vector API kernel when the JVM has the module (FrameBenchmark makes
+ * sure the forked JVM does).
+ */
+public class EdgeBenchmark extends FrameBenchmark {
+
+    private Object scalar;
+    private Object vector;
+    private int[] pixels;
+    private int[] luminance;
+    private int[] edges;
+
+    @Setup
+    public void setUp() throws Throwable {
+        loadFrame();
+        scalar = Mlaa.SCALAR_KERNEL.invoke();
+        vector = Mlaa.DEFAULT_KERNEL.invoke();
+        if (vector == scalar) {
+            throw new IllegalStateException("the Vector API kernel isn't available in this JVM");
+        }
+        pixels = (int[]) Mlaa.PIXELS.invoke(Mlaa.NEW_RASTER.invoke(frame));
+        luminance = new int[pixels.length];
+        edges = new int[pixels.length];
+    }
+
+    @Benchmark
+    public int[] scalarEdges() throws Throwable {
+        Mlaa.CLASSIFY.invoke(scalar, pixels, frame.getWidth(), frame.getHeight(), 50, luminance, edges);
+        return edges;
+    }
+
+    @Benchmark
+    public int[] vectorEdges() throws Throwable {
+        Mlaa.CLASSIFY.invoke(vector, pixels, frame.getWidth(), frame.getHeight(), 50, luminance, edges);
+        return edges;
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Settings shared by every benchmark: the frames they run on and how long they run. Times are
+ * per image; BenchmarkMain divides them by the number of pixels in the image.
+ *
+ * The reference code keeps a boolean and a double for every pixel of every pattern, about 2.5 GB
+ * for an 8k frame, so the forked JVM gets a bigger heap than the default. It also gets the
+ * Vector API, so the vector edge kernel is measured rather than the scalar fallback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g", "--add-modules=jdk.incubator.vector" })
+public abstract class FrameBenchmark {
+
+    @Param({ "metalGearSolid.png", "granTurismo.png", "tekken.png", "diamondDemo.png", "squareDemo.png",
+            "staircaseDemo.png", "checkerboard-1080p", "staircase-1080p", "noise-1080p", "checkerboard-4k",
+            "staircase-4k", "noise-4k", "checkerboard-8k", "staircase-8k", "noise-8k" })
+    public String image;
+
+    // the frame as loaded; never changed by a benchmark
+    protected BufferedImage frame;
+
+    /*
+     * Called first thing by each benchmark's own setup; JMH doesn't say in which order the setups
+     * of a class and its superclass run
+     */
+    protected void loadFrame() throws Exception {
+        frame = Frames.load(image);
+    }
+}
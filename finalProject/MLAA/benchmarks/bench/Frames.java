@@ -0,0 +1,127 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/*
+ * The images the benchmarks run on. A name ending in an image extension is read from the test
+ * images directory (the mlaa.testImages system property, ../testImages by default, which is
+ * where it is when running from finalProject/MLAA). Anything else names a synthetic frame such as
+ * "staircase-4k": checkerboard, staircase or noise, at 1080p, 4k or 8k.
+ *
+ * Every frame is a TYPE_3BYTE_BGR image, the type ImageIO gives for the test images.
+ */
+final class Frames {
+
+    private static final String TEST_IMAGES = System.getProperty("mlaa.testImages", "../testImages");
+
+    private Frames() {
+    }
+
+    static BufferedImage load(String name) throws IOException {
+
+        if (name.indexOf('.') >= 0) {
+            File file = new File(TEST_IMAGES, name);
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("can't read " + file);
+            }
+            return image;
+        }
+
+        int dash = name.lastIndexOf('-');
+        if (dash < 0) {
+            throw new IllegalArgumentException("unknown frame " + name);
+        }
+        String kind = name.substring(0, dash);
+        String size = name.substring(dash + 1);
+
+        int width;
+        int height;
+        if (size.equals("1080p")) {
+            width = 1920;
+            height = 1080;
+        } else if (size.equals("4k")) {
+            width = 3840;
+            height = 2160;
+        } else if (size.equals("8k")) {
+            width = 7680;
+            height = 4320;
+        } else {
+            throw new IllegalArgumentException("unknown frame size " + size);
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        if (kind.equals("checkerboard")) {
+            checkerboard(image);
+        } else if (kind.equals("staircase")) {
+            staircase(image);
+        } else if (kind.equals("noise")) {
+            noise(image);
+        } else {
+            throw new IllegalArgumentException("unknown frame kind " + kind);
+        }
+        return image;
+    }
+
+    /*
+     * Copies the pixels of one frame over another of the same size and type, so a benchmark that
+     * blends in place starts from the same image every time
+     */
+    static void copy(BufferedImage from, BufferedImage to) {
+        byte[] source = ((DataBufferByte) from.getRaster().getDataBuffer()).getData();
+        byte[] target = ((DataBufferByte) to.getRaster().getDataBuffer()).getData();
+        System.arraycopy(source, 0, target, 0, source.length);
+    }
+
+    /*
+     * @return an empty frame of the same size and type
+     */
+    static BufferedImage blank(BufferedImage image) {
+        return new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    // 8 pixel black and white squares: short patterns along every edge
+    private static void checkerboard(BufferedImage image) {
+
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int width = image.getWidth();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                byte value = (byte) ((((x >> 3) + (y >> 3)) & 1) == 0 ? 0 : 255);
+                int index = (y * width + x) * 3;
+                data[index] = value;
+                data[index + 1] = value;
+                data[index + 2] = value;
+            }
+        }
+    }
+
+    // dark and light bands with edges at a few shallow angles: long stairs, like aliased lines
+    private static void staircase(BufferedImage image) {
+
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int width = image.getWidth();
+        int[] slopes = { 3, 7, 16, 40 };
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int slope = slopes[(x / 480) % slopes.length];
+                boolean dark = (((y + x / slope) / 24) & 1) == 0;
+                int index = (y * width + x) * 3;
+                data[index] = (byte) (dark ? 40 : 200);
+                data[index + 1] = (byte) (dark ? 60 : 220);
+                data[index + 2] = (byte) (dark ? 30 : 210);
+            }
+        }
+    }
+
+    // random pixels from a fixed seed: patterns start almost everywhere but are short
+    private static void noise(BufferedImage image) {
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        new Random(42).nextBytes(data);
+    }
+}
@@ -0,0 +1,131 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Handles on the MLAA classes. They live in the default package, which code in a named package
+ * (and JMH insists on one) can't name, so they are looked up once here and called through
+ * method handles. Handles held in static finals are inlined by the JIT like a direct call, so
+ * this doesn't show up in the measurements.
+ */
+final class Mlaa {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Class<?> ALGORITHM = find("AlgorithmMLAA");
+    private static final Class<?> RASTER = find("PixelRaster");
+    private static final Class<?> DETECTOR = find("FusedPatternDetector");
+    private static final Class<?> LUMINANCE = find("LumaPlane");
+    private static final Class<?> MASKS = find("PatternMasks");
+    private static final Class<?> BLENDER = find("PatternBlender");
+    private static final Class<?> KERNEL = find("EdgeKernel");
+
+    static final MethodHandle NEW_ALGORITHM = constructor(ALGORITHM);
+    static final MethodHandle ALGORITHM_RUN = method(ALGORITHM, "algorithm", BufferedImage.class, BufferedImage.class);
+    static final MethodHandle REFERENCE_ALGORITHM = method(ALGORITHM, "referenceAlgorithm", BufferedImage.class,
+            BufferedImage.class);
+    static final MethodHandle PARALLEL_ALGORITHM = method(ALGORITHM, "parallelAlgorithm", BufferedImage.class,
+            BufferedImage.class, ForkJoinPool.class);
+    static final MethodHandle WRITING_PATTERNS = method(ALGORITHM, "writingPatterns", BufferedImage.class,
+            BufferedImage.class);
+    static final MethodHandle LOCATING_PATTERN_1 = locatingPattern(1);
+    static final MethodHandle LOCATING_PATTERN_2 = locatingPattern(2);
+    static final MethodHandle LOCATING_PATTERN_3 = locatingPattern(3);
+    static final MethodHandle LOCATING_PATTERN_4 = locatingPattern(4);
+    static final MethodHandle LOCATING_PATTERN_5 = locatingPattern(5);
+    static final MethodHandle LOCATING_PATTERN_6 = locatingPattern(6);
+    static final MethodHandle LOCATING_PATTERN_7 = locatingPattern(7);
+    static final MethodHandle LOCATING_PATTERN_8 = locatingPattern(8);
+    static final MethodHandle CHANGED_PIXELS = getter(ALGORITHM, "totalChangedPixels");
+    static final MethodHandle PATTERN_LENGTHS = getter(ALGORITHM, "totalPatternLengths");
+
+    static final MethodHandle NEW_RASTER = constructor(RASTER, BufferedImage.class);
+    static final MethodHandle NEW_DETECTOR = constructor(DETECTOR, int.class);
+    static final MethodHandle DETECT = method(DETECTOR, "detect", MASKS, RASTER, LUMINANCE, MASKS,
+            ForkJoinPool.class);
+    static final MethodHandle NEW_LUMINANCE = constructor(LUMINANCE);
+    static final MethodHandle NEW_MASKS = constructor(MASKS);
+    static final MethodHandle NEW_BLENDER = constructor(BLENDER);
+    static final MethodHandle BLEND = method(BLENDER, "blend", void.class, RASTER, MASKS);
+    static final MethodHandle PARALLEL_BLEND = method(BLENDER, "blend", void.class, RASTER, MASKS,
+            ForkJoinPool.class);
+
+    static final MethodHandle SCALAR_KERNEL = staticGetter(KERNEL, "SCALAR");
+    static final MethodHandle DEFAULT_KERNEL = staticMethod(KERNEL, "getDefault", KERNEL);
+    static final MethodHandle CLASSIFY = method(KERNEL, "classify", void.class, int[].class, int.class, int.class,
+            int.class, int[].class, int[].class);
+    static final MethodHandle PIXELS = method(RASTER, "getPixels", int[].class);
+
+    private Mlaa() {
+    }
+
+    /*
+     * Throws away the patterns the locatingPattern methods left in an AlgorithmMLAA, so the
+     * lists don't keep growing from one benchmark call to the next
+     */
+    static void forgetPatterns(Object algorithm) throws Throwable {
+        ((List<?>) CHANGED_PIXELS.invoke(algorithm)).clear();
+        ((List<?>) PATTERN_LENGTHS.invoke(algorithm)).clear();
+    }
+
+    private static MethodHandle locatingPattern(int n) {
+        return method(ALGORITHM, "locatingPattern" + n, void.class, BufferedImage.class);
+    }
+
+    private static Class<?> find(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("MLAA class " + name + " is not on the class path", e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookupIn(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, LOOKUP);
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            return lookupIn(type).findConstructor(type, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no constructor on " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+        try {
+            return lookupIn(type).findVirtual(type, name, MethodType.methodType(result, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no method " + name + " on " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+        try {
+            return lookupIn(type).findStatic(type, name, MethodType.methodType(result, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no method " + name + " on " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle staticGetter(Class<?> type, String name) {
+        try {
+            return lookupIn(type).findStaticGetter(type, name, type.getDeclaredField(name).getType());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no field " + name + " on " + type.getName(), e);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> type, String name) {
+        try {
+            return lookupIn(type).findGetter(type, name, type.getDeclaredField(name).getType());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no field " + name + " on " + type.getName(), e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 public class AlgorithmMLAA {
 
@@ -13,12 +14,87 @@ public class AlgorithmMLAA {
     // the less patterns the algorithm will find.
     private int strength = 50; //default value is 50
 
+    // finds and blends the patterns for algorithm(); safe to use from several threads at once
+    private MLAAEngine engine = new MLAAEngine(strength);
+
     /*
      * Searches for all 8 "L" patterns and blends pictures accordingly
-     * 
+     *
      * @return new image with MLAA
      */
     protected BufferedImage algorithm(BufferedImage image) throws Exception {
+        return engine.algorithm(image);
+    }
+
+    /*
+     * Same as algorithm(), but splits the image into strips that are searched and blended in
+     * parallel on the pool. The new image is identical to the one algorithm() returns.
+     *
+     * @return new image with MLAA
+     */
+    protected BufferedImage parallelAlgorithm(BufferedImage image, ForkJoinPool pool) throws Exception {
+        return engine.algorithm(image, pool);
+    }
+
+    /*
+     * Same as algorithm(), but with options for just this image: strength, how long a pattern is
+     * followed, luminance weights, which patterns are blended and what happens to alpha
+     *
+     * @return new image with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image, MLAAOptions options) {
+        return engine.algorithm(image, options);
+    }
+
+    /*
+     * Same as algorithm(), but blends a raw frame in place, straight in its (usually memory
+     * mapped) buffer
+     *
+     * @return frame, with MLAA
+     */
+    protected RawFrame algorithm(RawFrame frame) {
+        return engine.algorithm(frame);
+    }
+
+    /*
+     * Sets the listener told where the time went for every image algorithm() does from now on, or
+     * turns metrics off again with null (see MLAAMetrics)
+     */
+    protected void setMetricsListener(MLAAMetrics.Listener listener) {
+        engine.setMetricsListener(listener);
+    }
+
+    /*
+     * First half of algorithm(): finds all 8 "L" patterns without blending anything
+     *
+     * @return the patterns found in the image
+     */
+    protected EdgeMap detect(BufferedImage image) {
+        return engine.detect(image);
+    }
+
+    /*
+     * Second half of algorithm(): blends the image according to patterns found by detect. The
+     * same map can be blended any number of times, into any image of the same size.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage blend(BufferedImage image, EdgeMap map) {
+        return engine.blend(image, map);
+    }
+
+    /*
+     * Searches for all 8 "L" patterns one pattern at a time. This is the original version of
+     * algorithm(); it is kept so faster versions can be checked against it. The patterns are
+     * kept in this object while the image is blended, so only one image is done at a time.
+     *
+     * @return new image with MLAA
+     */
+    protected synchronized BufferedImage referenceAlgorithm(BufferedImage image) throws Exception {
+
+        // forget the patterns of the last image
+        totalChangedPixels.clear();
+        totalPatternLengths.clear();
 
         locatingPattern1(image);
         locatingPattern2(image);
@@ -0,0 +1,296 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+public class BatchMLAA {
+
+    // file types ImageIO can read out of the box
+    private static final String[] IMAGE_EXTENSIONS = { ".png", ".bmp", ".gif", ".jpg", ".jpeg", ".wbmp" };
+
+    // passed down the queues to tell a stage there is nothing left to do
+    private static final Job END = new Job(null, null);
+
+    /*
+     * One image on its way through the pipeline
+     */
+    private static class Job {
+        private Path input;
+        private Path output;
+        private BufferedImage image;
+
+        private Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    private MLAAEngine engine = new MLAAEngine(50);
+    private int threads;
+
+    // decoded images waiting for MLAA, and finished images waiting to be written. Both are
+    // bounded so a fast stage can't fill the heap with images the next stage hasn't got to yet.
+    private BlockingQueue<Job> decoded;
+    private BlockingQueue<Job> blended;
+
+    // time spent in each stage, summed over all of its threads
+    private AtomicLong decodeNanos = new AtomicLong();
+    private AtomicLong blendNanos = new AtomicLong();
+    private AtomicLong encodeNanos = new AtomicLong();
+    private AtomicLong pixels = new AtomicLong();
+    private AtomicInteger written = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+
+    private BatchMLAA(int threads) {
+        this.threads = threads;
+        this.decoded = new ArrayBlockingQueue<Job>(threads * 2);
+        this.blended = new ArrayBlockingQueue<Job>(threads * 2);
+    }
+
+    /*
+     * Runs MLAA over every image in a directory, or every image matching a glob, and writes the
+     * results as PNGs with the same relative paths into the output directory. Images whose output
+     * is newer than the input are skipped.
+     *
+     * Usage: java BatchMLAA <input directory or glob> <output directory> [threads]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.err.println("Usage: java BatchMLAA <input directory or glob> <output directory> [threads]");
+            System.exit(1);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path outputDirectory = Paths.get(args[1]);
+
+        List<Path> inputs = new ArrayList<Path>();
+        Path base = findInputs(args[0], inputs);
+
+        List<Job> jobs = new ArrayList<Job>();
+        int skipped = 0;
+        for (Path input : inputs) {
+            Path output = outputDirectory.resolve(withPngExtension(base.relativize(input).toString()));
+            if (Files.exists(output)
+                    && Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(input)) >= 0) {
+                skipped++;
+            } else {
+                jobs.add(new Job(input, output));
+            }
+        }
+
+        BatchMLAA batch = new BatchMLAA(threads);
+        long start = System.nanoTime();
+        batch.run(jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        batch.report(inputs.size(), skipped, seconds);
+    }
+
+    /*
+     * Decodes, blends and encodes the jobs. Each stage has its own threads, so while one image is
+     * being blended the next is already being decoded and the last is being written.
+     */
+    private void run(List<Job> jobs) throws InterruptedException {
+
+        BlockingQueue<Job> waiting = new ArrayBlockingQueue<Job>(jobs.size() + threads);
+        waiting.addAll(jobs);
+        for (int i = 0; i < threads; i++) {
+            waiting.add(END);
+        }
+
+        List<Thread> decoders = startStage("decode", threads, () -> decode(waiting));
+        List<Thread> blenders = startStage("mlaa", threads, this::blend);
+        List<Thread> encoders = startStage("encode", threads, this::encode);
+
+        // each stage stops after the one before it, once every thread has seen its end marker
+        join(decoders);
+        for (int i = 0; i < threads; i++) {
+            decoded.put(END);
+        }
+        join(blenders);
+        for (int i = 0; i < threads; i++) {
+            blended.put(END);
+        }
+        join(encoders);
+    }
+
+    private void decode(BlockingQueue<Job> waiting) {
+
+        try {
+            for (Job job = waiting.take(); job != END; job = waiting.take()) {
+                long start = System.nanoTime();
+                try {
+                    job.image = ImageIO.read(job.input.toFile());
+                    if (job.image == null) {
+                        throw new IOException("not an image ImageIO can read");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // readers throw all sorts on broken files; the job fails but the stage goes on
+                    fail(job, e);
+                    continue;
+                } finally {
+                    decodeNanos.addAndGet(System.nanoTime() - start);
+                }
+                decoded.put(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void blend() {
+
+        try {
+            for (Job job = decoded.take(); job != END; job = decoded.take()) {
+                long start = System.nanoTime();
+                try {
+                    engine.algorithm(job.image);
+                    pixels.addAndGet((long) job.image.getWidth() * job.image.getHeight());
+                } catch (RuntimeException e) {
+                    fail(job, e);
+                    continue;
+                } finally {
+                    blendNanos.addAndGet(System.nanoTime() - start);
+                }
+                blended.put(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void encode() {
+
+        try {
+            for (Job job = blended.take(); job != END; job = blended.take()) {
+                long start = System.nanoTime();
+                try {
+                    // write next to the output first, so an interrupted run never leaves a half
+                    // written image that looks up to date
+                    Files.createDirectories(job.output.toAbsolutePath().getParent());
+                    Path temporary = job.output.resolveSibling(job.output.getFileName() + ".tmp");
+                    ImageIO.write(job.image, "png", temporary.toFile());
+                    Files.move(temporary, job.output, StandardCopyOption.REPLACE_EXISTING);
+                    written.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    fail(job, e);
+                } finally {
+                    encodeNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Job job, Exception e) {
+        failed.incrementAndGet();
+        System.err.println("Failed on " + job.input + ": " + e.getMessage());
+    }
+
+    private void report(int found, int skipped, double seconds) {
+
+        int done = written.get();
+        System.out.println(String.format(Locale.ROOT,
+                "%d images found, %d up to date, %d written, %d failed in %.2f s (%.1f images/s, %.1f megapixels/s)",
+                found, skipped, done, failed.get(), seconds, done / seconds, pixels.get() / 1e6 / seconds));
+        reportStage("decode", decodeNanos.get(), done);
+        reportStage("mlaa", blendNanos.get(), done);
+        reportStage("encode", encodeNanos.get(), done);
+    }
+
+    private void reportStage(String name, long nanos, int images) {
+        System.out.println(String.format(Locale.ROOT, "  %-6s %10.1f ms total, %8.2f ms per image", name,
+                nanos / 1e6, images == 0 ? 0.0 : nanos / 1e6 / images));
+    }
+
+    /*
+     * Collects the images to process. A directory gives every image directly inside it; anything
+     * else is taken as a glob such as "shots/**.png", matched against every file under the part of
+     * the path before the first wildcard.
+     *
+     * @return directory the inputs' relative paths are taken from
+     */
+    private static Path findInputs(String argument, List<Path> inputs) throws IOException {
+
+        Path path = Paths.get(argument);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                inputs.addAll(files.filter(BatchMLAA::isImage).sorted().collect(Collectors.toList()));
+            }
+            return path;
+        }
+
+        int wildcard = firstWildcard(argument);
+        int separator = argument.lastIndexOf(File.separatorChar, wildcard);
+        Path base = Paths.get(separator < 0 ? "." : argument.substring(0, separator + 1));
+        String pattern = separator < 0 ? argument : argument.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        try (Stream<Path> files = Files.walk(base)) {
+            inputs.addAll(files.filter(file -> Files.isRegularFile(file) && matcher.matches(base.relativize(file)))
+                    .sorted().collect(Collectors.toList()));
+        }
+        return base;
+    }
+
+    private static int firstWildcard(String glob) {
+
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[{".indexOf(glob.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return glob.length();
+    }
+
+    private static boolean isImage(Path file) {
+
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension) && Files.isRegularFile(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String withPngExtension(String name) {
+
+        int dot = name.lastIndexOf('.');
+        int separator = name.lastIndexOf(File.separatorChar);
+        return (dot > separator ? name.substring(0, dot) : name) + ".png";
+    }
+
+    private static List<Thread> startStage(String name, int count, Runnable work) {
+
+        List<Thread> stage = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(work, name + "-" + i);
+            thread.start();
+            stage.add(thread);
+        }
+        return stage;
+    }
+
+    private static void join(List<Thread> stage) throws InterruptedException {
+        for (Thread thread : stage) {
+            thread.join();
+        }
+    }
+}
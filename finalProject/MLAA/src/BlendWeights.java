@@ -0,0 +1,133 @@
+public class BlendWeights {
+
+    /*
+     * Works out how much of its neighbour across the primary edge each pixel of a pattern gets
+     */
+    protected interface WeightCurve {
+
+        /*
+         * @return weight of every pixel in the first half of a pattern of the given length, starting
+         * with the pixel the pattern starts at; (patternLength + 1) / 2 weights in all
+         */
+        double[] weights(int patternLength);
+    }
+
+    /*
+     * The weights AlgorithmMLAA.writingPatterns has always used: trapezoids drawn by connecting a
+     * line through the midpoint of the secondary edge and the midpoint of the primary edge, with
+     * the weights of patterns of length 1 and 2 hardcoded
+     */
+    protected static final WeightCurve TRAPEZOID = new WeightCurve() {
+        @Override
+        public double[] weights(int patternLength) {
+
+            double[] weights = new double[(patternLength + 1) / 2];
+            double trapezoidA = 1.0 / 2.0;
+            for (int lengthCounter = 0; lengthCounter < weights.length; lengthCounter++) {
+
+                double a;
+                // exactly the same steps as writingPatterns, so the weights are identical
+                if (patternLength == 1) {
+                    a = 1.0 / 8.0;
+                } else if (patternLength == 2) {
+                    a = 1.0 / 4.0;
+                } else {
+                    double trapezoidB = trapezoidA - (1.0 / patternLength);
+                    if (trapezoidB == 0.0) {
+                        if (patternLength % 2 == 0) {
+                            a = trapezoidA * 1.0 / 2.0;
+                        } else {
+                            a = trapezoidA * (1.0 / 2.0) / 2.0;
+                        }
+                    } else {
+                        a = trapezoidA + trapezoidB / 2.0 * 1.0;
+                        trapezoidA = trapezoidB;
+                    }
+                }
+                weights[lengthCounter] = a;
+            }
+            return weights;
+        }
+    };
+
+    /*
+     * The area under the same line, pixel by pixel, as in the area texture of the original MLAA
+     * paper. The line starts at height 1/2 on the secondary edge and reaches 0 halfway along the
+     * pattern. Patterns of length 1 and 2 get the same weights as TRAPEZOID.
+     */
+    protected static final WeightCurve AREA = new WeightCurve() {
+        @Override
+        public double[] weights(int patternLength) {
+
+            double[] weights = new double[(patternLength + 1) / 2];
+            double half = patternLength / 2.0;
+            for (int k = 0; k < weights.length; k++) {
+                double start = 0.5 * (1.0 - k / half);
+                if (k + 1 <= half) {
+                    double end = 0.5 * (1.0 - (k + 1) / half);
+                    weights[k] = (start + end) / 2.0;
+                } else {
+                    // the line reaches 0 inside this pixel, leaving a triangle
+                    weights[k] = start * (half - k) / 2.0;
+                }
+            }
+            return weights;
+        }
+    };
+
+    // patterns up to this long are kept in the table by default
+    protected static final int DEFAULT_MAXIMUM_LENGTH = 1024;
+
+    private WeightCurve curve;
+    private int maximumLength;
+    // weights for each pattern length, filled in the first time a length is needed. The array is
+    // replaced, never changed, so threads reading it without a lock always see complete rows.
+    private volatile double[][] table = new double[1][];
+
+    protected BlendWeights() {
+        this(TRAPEZOID, DEFAULT_MAXIMUM_LENGTH);
+    }
+
+    /*
+     * @param maximumLength longest pattern whose weights are kept; longer patterns are worked out
+     * every time they come up
+     */
+    protected BlendWeights(WeightCurve curve, int maximumLength) {
+        this.curve = curve;
+        this.maximumLength = maximumLength;
+    }
+
+    protected WeightCurve getCurve() {
+        return curve;
+    }
+
+    /*
+     * The array returned must not be changed.
+     *
+     * @return weight of every pixel in the first half of a pattern of the given length
+     */
+    protected double[] getWeights(int patternLength) {
+
+        double[][] rows = table;
+        if (patternLength < rows.length && rows[patternLength] != null) {
+            return rows[patternLength];
+        }
+        if (patternLength > maximumLength) {
+            return curve.weights(patternLength);
+        }
+        return addWeights(patternLength);
+    }
+
+    private synchronized double[] addWeights(int patternLength) {
+
+        double[][] rows = table;
+        if (patternLength < rows.length && rows[patternLength] != null) {
+            return rows[patternLength];
+        }
+        double[][] newRows = new double[Math.max(rows.length, patternLength + 1)][];
+        System.arraycopy(rows, 0, newRows, 0, rows.length);
+        newRows[patternLength] = curve.weights(patternLength);
+        table = newRows;
+        return newRows[patternLength];
+    }
+}
@@ -0,0 +1,302 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public class ContentHash {
+
+    // the primes of xxHash64
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    // little endian reads of 8 and 4 bytes out of a byte array
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ContentHash() {
+    }
+
+    /*
+     * Hashes the size and type of the image and its data as stored: straight from the data
+     * buffer when it holds exactly the image (see getData), otherwise the packed ARGB of every
+     * pixel. The alpha byte of images without alpha isn't hashed, since it means nothing.
+     *
+     * The data only means the same colours in two images of the same type if they have the same
+     * palette, so the palette of an indexed image is hashed too, and so is the layout of a
+     * TYPE_CUSTOM image, whose type says nothing about it.
+     *
+     * @return 64 bit hash of the image
+     */
+    protected static long hash(BufferedImage image) {
+        return hash(image, true);
+    }
+
+    /*
+     * Same as hash(image), but with alpha left out wherever it is stored apart from the colours,
+     * so images that differ only in alpha hash the same. Premultiplied colours only mean
+     * something together with their alpha, so their alpha is hashed either way.
+     *
+     * @return 64 bit hash of the image's colours
+     */
+    protected static long hash(BufferedImage image, boolean alpha) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long seed = ((long) width << 40) ^ ((long) height << 16) ^ image.getType();
+        ColorModel model = image.getColorModel();
+        boolean keepAlpha = model.hasAlpha() && (alpha || model.isAlphaPremultiplied());
+
+        if (model instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) model;
+            int[] colours = new int[palette.getMapSize()];
+            palette.getRGBs(colours);
+            seed = xxHash64(colours, colours.length, alpha ? -1 : 0xFFFFFF, seed);
+        }
+        if (image.getType() == BufferedImage.TYPE_CUSTOM) {
+            int[] layout = layout(image);
+            seed = xxHash64(layout, layout.length, -1, seed);
+        }
+
+        Object data = getData(image);
+        if (data instanceof byte[]) {
+            int mask = keepAlpha || model instanceof IndexColorModel ? -1 : alphaByteMask(image);
+            if (mask != 0) {
+                return xxHash64((byte[]) data, ((byte[]) data).length, mask, seed);
+            }
+        } else if (data instanceof int[] && model instanceof DirectColorModel) {
+            int mask = keepAlpha ? -1 : model.hasAlpha() ? ~((DirectColorModel) model).getAlphaMask() : 0xFFFFFF;
+            return xxHash64((int[]) data, ((int[]) data).length, mask, seed);
+        }
+        return xxHash64(new PixelRaster(image).getPixels(), width * height, keepAlpha ? -1 : 0xFFFFFF, seed);
+    }
+
+    /*
+     * @return mask that clears the alpha byte of each pixel of a byte image when its bytes are
+     * read 4 at a time, -1 if it has no alpha, or 0 if its alpha can't be masked out that way
+     */
+    private static int alphaByteMask(BufferedImage image) {
+
+        if (!image.getColorModel().hasAlpha()) {
+            return -1;
+        }
+        SampleModel samples = image.getSampleModel();
+        if (!(samples instanceof ComponentSampleModel) || ((ComponentSampleModel) samples).getPixelStride() != 4
+                || samples.getNumBands() != 4) {
+            return 0;
+        }
+        ComponentSampleModel component = (ComponentSampleModel) samples;
+        if (component.getScanlineStride() % 4 != 0) {
+            return 0;
+        }
+        // alpha is always the last band of a component colour model
+        return ~(0xFF << (8 * component.getBandOffsets()[3]));
+    }
+
+    /*
+     * @return what decides how a custom image's data elements become colours: the kinds of colour
+     * and sample model, and where each band is found in the data
+     */
+    private static int[] layout(BufferedImage image) {
+
+        ColorModel model = image.getColorModel();
+        SampleModel samples = image.getSampleModel();
+        int[] layout = new int[8];
+        int n = 0;
+        layout[n++] = model.getClass().getName().hashCode();
+        layout[n++] = samples.getClass().getName().hashCode();
+        layout[n++] = (model.hasAlpha() ? 1 : 0) | (model.isAlphaPremultiplied() ? 2 : 0);
+        layout[n++] = model.getColorSpace().getType();
+        layout[n++] = samples.getDataType();
+        layout[n++] = samples.getNumBands();
+        int[] sizes = samples.getSampleSize();
+        int[] offsets;
+        if (samples instanceof ComponentSampleModel) {
+            ComponentSampleModel component = (ComponentSampleModel) samples;
+            layout[n++] = component.getPixelStride();
+            offsets = component.getBandOffsets();
+        } else if (samples instanceof SinglePixelPackedSampleModel) {
+            offsets = ((SinglePixelPackedSampleModel) samples).getBitMasks();
+        } else if (samples instanceof MultiPixelPackedSampleModel) {
+            layout[n++] = ((MultiPixelPackedSampleModel) samples).getPixelBitStride();
+            offsets = new int[0];
+        } else {
+            offsets = new int[0];
+        }
+        int[] all = new int[n + sizes.length + offsets.length];
+        System.arraycopy(layout, 0, all, 0, n);
+        System.arraycopy(sizes, 0, all, n, sizes.length);
+        System.arraycopy(offsets, 0, all, n + sizes.length, offsets.length);
+        return all;
+    }
+
+    /*
+     * Sub images share the data buffer of their parent, and some rasters have more than one bank
+     * or don't start at the beginning of the array.
+     *
+     * @return the array of the image's data buffer when it holds exactly the image's pixels, or
+     * null
+     */
+    protected static Object getData(BufferedImage image) {
+
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (raster.getParent() != null || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+        Object data = null;
+        int length = 0;
+        if (buffer instanceof DataBufferInt) {
+            data = ((DataBufferInt) buffer).getData();
+            length = ((int[]) data).length;
+        } else if (buffer instanceof DataBufferByte) {
+            data = ((DataBufferByte) buffer).getData();
+            length = ((byte[]) data).length;
+        } else if (buffer instanceof DataBufferUShort) {
+            data = ((DataBufferUShort) buffer).getData();
+            length = ((short[]) data).length;
+        }
+        return length == buffer.getSize() ? data : null;
+    }
+
+    /*
+     * xxHash64 of the first length values, each ANDed with mask, as if they were written out
+     * as little endian bytes. Gives the same hash as any other xxHash64 of those bytes.
+     *
+     * @return 64 bit hash of the values
+     */
+    protected static long xxHash64(int[] values, int length, int mask, long seed) {
+
+        int i = 0;
+        long hash;
+        if (length >= 8) {
+            long v1 = seed + PRIME_1 + PRIME_2;
+            long v2 = seed + PRIME_2;
+            long v3 = seed;
+            long v4 = seed - PRIME_1;
+            // 32 bytes, 8 values, at a time
+            for (; i <= length - 8; i += 8) {
+                v1 = round(v1, lane(values, i, mask));
+                v2 = round(v2, lane(values, i + 2, mask));
+                v3 = round(v3, lane(values, i + 4, mask));
+                v4 = round(v4, lane(values, i + 6, mask));
+            }
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME_5;
+        }
+        hash += 4L * length;
+
+        for (; i <= length - 2; i += 2) {
+            hash ^= round(0, lane(values, i, mask));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i < length) {
+            hash ^= ((values[i] & mask) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+        }
+
+        return avalanche(hash);
+    }
+
+    /*
+     * xxHash64 of the first length bytes
+     *
+     * @return 64 bit hash of the bytes
+     */
+    protected static long xxHash64(byte[] bytes, int length, long seed) {
+        return xxHash64(bytes, length, -1, seed);
+    }
+
+    /*
+     * xxHash64 of the first length bytes, every 4 of them ANDed with mask as a little endian int
+     *
+     * @return 64 bit hash of the bytes
+     */
+    protected static long xxHash64(byte[] bytes, int length, int mask, long seed) {
+
+        long longMask = (mask & 0xFFFFFFFFL) | ((long) mask << 32);
+        int i = 0;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME_1 + PRIME_2;
+            long v2 = seed + PRIME_2;
+            long v3 = seed;
+            long v4 = seed - PRIME_1;
+            for (; i <= length - 32; i += 32) {
+                v1 = round(v1, ((long) LONGS.get(bytes, i) & longMask));
+                v2 = round(v2, ((long) LONGS.get(bytes, i + 8) & longMask));
+                v3 = round(v3, ((long) LONGS.get(bytes, i + 16) & longMask));
+                v4 = round(v4, ((long) LONGS.get(bytes, i + 24) & longMask));
+            }
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME_5;
+        }
+        hash += length;
+
+        for (; i <= length - 8; i += 8) {
+            hash ^= round(0, ((long) LONGS.get(bytes, i) & longMask));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i <= length - 4) {
+            hash ^= ((int) INTS.get(bytes, i) & mask & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            i += 4;
+        }
+        for (; i < length; i++) {
+            hash ^= (bytes[i] & (mask >>> (8 * (i & 3))) & 0xFFL) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+        return avalanche(hash);
+    }
+
+    /*
+     * @return values i and i + 1 as one little endian long
+     */
+    private static long lane(int[] values, int i, int mask) {
+        return ((values[i] & mask) & 0xFFFFFFFFL) | ((long) (values[i + 1] & mask) << 32);
+    }
+
+    private static long avalanche(long hash) {
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static long round(long accumulator, long input) {
+        return Long.rotateLeft(accumulator + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long mergeRound(long hash, long value) {
+        return (hash ^ round(0, value)) * PRIME_1 + PRIME_4;
+    }
+}
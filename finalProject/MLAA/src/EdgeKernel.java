@@ -0,0 +1,198 @@
+public class EdgeKernel {
+
+    // one bit for each neighbour a pixel is darker than by more than the strength, and one for
+    // each neighbour it is lighter than by more than the strength. Neighbours outside the image
+    // never get a bit.
+    protected static final int DARKER_LEFT = 1;
+    protected static final int DARKER_RIGHT = 1 << 1;
+    protected static final int DARKER_UP = 1 << 2;
+    protected static final int DARKER_DOWN = 1 << 3;
+    protected static final int LIGHTER_LEFT = 1 << 4;
+    protected static final int LIGHTER_RIGHT = 1 << 5;
+    protected static final int LIGHTER_UP = 1 << 6;
+    protected static final int LIGHTER_DOWN = 1 << 7;
+
+    // the scalar kernel; works everywhere
+    protected static final EdgeKernel SCALAR = new EdgeKernel();
+
+    // the kernel to use, picked once: VectorEdgeKernel when it is on the class path and the JVM
+    // was started with --add-modules jdk.incubator.vector, otherwise SCALAR
+    private static final EdgeKernel DEFAULT = loadDefault();
+
+    /*
+     * @return fastest kernel this JVM can run. Setting the system property mlaa.vector to false
+     * always gives the scalar kernel.
+     */
+    protected static EdgeKernel getDefault() {
+        return DEFAULT;
+    }
+
+    private static EdgeKernel loadDefault() {
+
+        if (!Boolean.parseBoolean(System.getProperty("mlaa.vector", "true"))) {
+            return SCALAR;
+        }
+        try {
+            return (EdgeKernel) Class.forName("VectorEdgeKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled in, or the incubator module isn't there
+            return SCALAR;
+        }
+    }
+
+    /*
+     * @return name of the kernel, for reports
+     */
+    protected String getName() {
+        return "scalar";
+    }
+
+    /*
+     * Computes the luminance of every pixel (on LumaPlane's integer scale) and which of its four
+     * neighbours it is darker or lighter than by more than the strength. The comparisons are the
+     * same ones locatingPattern1 through locatingPattern8 make, so the edge bits decide exactly
+     * as AlgorithmMLAA would.
+     *
+     * The pixels are read through the raster, so a raw frame is read straight from its buffer.
+     *
+     * @param luminance filled in with the luminance of the first width * height pixels
+     * @param edges filled in with the edge bits of the first width * height pixels
+     */
+    protected void classify(PixelRaster raster, int strength, int[] luminance, int[] edges) {
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int size = width * height;
+        for (int i = 0; i < size; i++) {
+            luminance[i] = luminance(raster.get(i));
+        }
+
+        int threshold = strength * LumaPlane.SCALE;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                edges[y * width + x] = edges(raster, luminance, width, height, strength, threshold, x, y);
+            }
+        }
+    }
+
+    /*
+     * Same as above, but with luminance weights other than AlgorithmMLAA's (see MLAAOptions). The
+     * luminance of every pixel is table[red] + table[256 + green] + table[512 + blue], and the
+     * differences are compared with the strength exactly, since there are no doubles to match.
+     *
+     * @param table red, green and blue weights times every channel value, 256 entries each
+     */
+    protected static void classify(PixelRaster raster, int strength, int[] table, int[] luminance, int[] edges) {
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int size = width * height;
+        for (int i = 0; i < size; i++) {
+            int pixel = raster.get(i);
+            luminance[i] = table[(pixel >> 16) & 0xFF] + table[256 + ((pixel >> 8) & 0xFF)]
+                    + table[512 + (pixel & 0xFF)];
+        }
+
+        int threshold = strength * LumaPlane.SCALE;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                int bits = 0;
+                if (x > 0) {
+                    bits |= compare(luminance[index] - luminance[index - 1], threshold, DARKER_LEFT, LIGHTER_LEFT);
+                }
+                if (x < width - 1) {
+                    bits |= compare(luminance[index] - luminance[index + 1], threshold, DARKER_RIGHT, LIGHTER_RIGHT);
+                }
+                if (y > 0) {
+                    bits |= compare(luminance[index] - luminance[index - width], threshold, DARKER_UP, LIGHTER_UP);
+                }
+                if (y < height - 1) {
+                    bits |= compare(luminance[index] - luminance[index + width], threshold, DARKER_DOWN,
+                            LIGHTER_DOWN);
+                }
+                edges[index] = bits;
+            }
+        }
+    }
+
+    /*
+     * @return luminance of a pixel multiplied by LumaPlane.SCALE
+     */
+    protected static int luminance(int pixel) {
+        return LumaPlane.RED_WEIGHT * ((pixel >> 16) & 0xFF) + LumaPlane.GREEN_WEIGHT * ((pixel >> 8) & 0xFF)
+                + LumaPlane.BLUE_WEIGHT * (pixel & 0xFF);
+    }
+
+    /*
+     * @return edge bits of the pixel at (x, y)
+     */
+    protected static int edges(PixelRaster raster, int[] luminance, int width, int height, int strength,
+            int threshold, int x, int y) {
+
+        int index = y * width + x;
+        int edges = 0;
+        if (x > 0) {
+            edges |= compare(raster, luminance, strength, threshold, index, index - 1, DARKER_LEFT, LIGHTER_LEFT);
+        }
+        if (x < width - 1) {
+            edges |= compare(raster, luminance, strength, threshold, index, index + 1, DARKER_RIGHT, LIGHTER_RIGHT);
+        }
+        if (y > 0) {
+            edges |= compare(raster, luminance, strength, threshold, index, index - width, DARKER_UP, LIGHTER_UP);
+        }
+        if (y < height - 1) {
+            edges |= compare(raster, luminance, strength, threshold, index, index + width, DARKER_DOWN, LIGHTER_DOWN);
+        }
+        return edges;
+    }
+
+    /*
+     * The integer luminances are exact, while the original double luminances are off by far less
+     * than 1 / SCALE. The two can only disagree when the difference lands exactly on the strength,
+     * so only then do we fall back to the original double arithmetic. This keeps every decision
+     * identical to AlgorithmMLAA without computing a double per comparison.
+     *
+     * @return darker if the pixel at index is darker than the one at compareIndex by more than the
+     * strength, lighter if it is lighter by more than the strength, otherwise 0
+     */
+    private static int compare(PixelRaster raster, int[] luminance, int strength, int threshold, int index,
+            int compareIndex, int darker, int lighter) {
+
+        int difference = luminance[index] - luminance[compareIndex];
+        if (difference < -threshold) {
+            return darker;
+        } else if (difference > threshold) {
+            return lighter;
+        } else if (difference == -threshold || difference == threshold) {
+            double exactDifference = exactLuminance(raster.get(index)) - exactLuminance(raster.get(compareIndex));
+            if (exactDifference < -strength) {
+                return darker;
+            } else if (exactDifference > strength) {
+                return lighter;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * @return darker if difference is below -threshold, lighter if it is above threshold,
+     * otherwise 0
+     */
+    private static int compare(int difference, int threshold, int darker, int lighter) {
+
+        if (difference < -threshold) {
+            return darker;
+        } else if (difference > threshold) {
+            return lighter;
+        }
+        return 0;
+    }
+
+    /*
+     * @return luminance of a pixel, computed exactly the way AlgorithmMLAA does
+     */
+    protected static double exactLuminance(int pixel) {
+        return (0.2126 * ((pixel >> 16) & 0xFF)) + (0.7152 * ((pixel >> 8) & 0xFF)) + (0.0722 * (pixel & 0xFF));
+    }
+}
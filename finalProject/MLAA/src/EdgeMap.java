@@ -0,0 +1,293 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.imageio.ImageIO;
+
+public class EdgeMap {
+
+    /*
+     * Binary format: MAGIC, VERSION, the width, the height, the strength, the maximum run length,
+     * the red, green and blue luma weights and the enabled patterns as big endian ints (the way
+     * DataOutputStream writes them), then for each of the 8 patterns the number of patterns found
+     * and, for each one, how many pixels its start is past the last one's (column by column, top
+     * to bottom) and its length. Those two are written as variable length ints, 7 bits to a byte,
+     * so most patterns take two or three bytes. Version 1 maps have only the strength, and were
+     * found with the default options otherwise.
+     */
+    protected static final int MAGIC = 0x4D4C4145; // "MLAE" when read as bytes
+    protected static final int VERSION = 2;
+
+    private int width;
+    private int height;
+    // what the patterns were found with (see MLAAOptions.detectionOptions)
+    private MLAAOptions options;
+    // for each of the 8 patterns: where every pattern starts, as x * height + y, in the order the
+    // blender visits them, and how long it is. Never changed once the map is made.
+    private int[][] starts;
+    private int[][] lengths;
+
+    private EdgeMap(int width, int height, MLAAOptions options, int[][] starts, int[][] lengths) {
+        this.width = width;
+        this.height = height;
+        this.options = options;
+        this.starts = starts;
+        this.lengths = lengths;
+    }
+
+    /*
+     * Copies the patterns out of masks, which can be reused as soon as this returns
+     *
+     * @param options detection options the masks were found with (see
+     * MLAAOptions.detectionOptions)
+     * @return the patterns in masks
+     */
+    protected static EdgeMap fromMasks(PatternMasks masks, MLAAOptions options) {
+
+        int width = masks.getWidth();
+        int height = masks.getHeight();
+        int[][] starts = new int[8][];
+        int[][] lengths = new int[8][];
+        for (int i = 0; i < 8; i++) {
+            starts[i] = new int[masks.countPatterns(i)];
+            lengths[i] = new int[starts[i].length];
+            for (int n = 0; n < starts[i].length; n++) {
+                starts[i][n] = masks.getRunStart(i, n);
+                lengths[i][n] = masks.getRunLength(i, n);
+            }
+        }
+        return new EdgeMap(width, height, options, starts, lengths);
+    }
+
+    /*
+     * Fills masks in with the patterns of the map
+     *
+     * @return masks
+     */
+    protected PatternMasks toMasks(PatternMasks masks) {
+
+        masks.reset(width, height);
+        for (int i = 0; i < 8; i++) {
+            for (int start : starts[i]) {
+                masks.setStart(i, start / height, start % height);
+            }
+        }
+        masks.countStarts();
+
+        int[] longest = new int[8];
+        for (int i = 0; i < 8; i++) {
+            for (int n = 0; n < starts[i].length; n++) {
+                masks.setLength(i, starts[i][n] / height, starts[i][n] % height, lengths[i][n]);
+                longest[i] = Math.max(longest[i], lengths[i][n]);
+            }
+        }
+        masks.updateLongestPatterns(longest);
+        return masks;
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * @return strength the patterns were found with
+     */
+    protected int getStrength() {
+        return options.getStrength();
+    }
+
+    /*
+     * @return options the patterns were found with; their alpha and blend are the defaults
+     */
+    protected MLAAOptions getOptions() {
+        return options;
+    }
+
+    /*
+     * @return number of patterns found for pattern i
+     */
+    protected int countPatterns(int i) {
+        return starts[i].length;
+    }
+
+    /*
+     * @return roughly how much memory the map takes up
+     */
+    protected long getBytes() {
+
+        // the object and its two arrays of arrays, then 16 bytes of header per array
+        long bytes = 96;
+        for (int i = 0; i < 8; i++) {
+            bytes += 32 + 8L * starts[i].length;
+        }
+        return bytes;
+    }
+
+    /*
+     * Writes the map in the binary format above. The stream is not closed.
+     */
+    protected void write(OutputStream stream) throws IOException {
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(options.getStrength());
+        out.writeInt(options.getMaximumRunLength());
+        out.writeInt(options.getRedWeight());
+        out.writeInt(options.getGreenWeight());
+        out.writeInt(options.getBlueWeight());
+        out.writeInt(options.getPatterns());
+        for (int i = 0; i < 8; i++) {
+            writeVarInt(out, starts[i].length);
+            int last = 0;
+            for (int n = 0; n < starts[i].length; n++) {
+                writeVarInt(out, starts[i][n] - last);
+                writeVarInt(out, lengths[i][n]);
+                last = starts[i][n];
+            }
+        }
+        out.flush();
+    }
+
+    /*
+     * Reads a map written by write. Reads ahead, so nothing after the map should be read from the
+     * same stream.
+     *
+     * @return the map
+     */
+    protected static EdgeMap read(InputStream stream) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an edge map");
+        }
+        int version = in.readInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("edge map version " + version + " is not supported");
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width < 0 || height < 0) {
+            throw new IOException("broken edge map header");
+        }
+        MLAAOptions options;
+        try {
+            options = MLAAOptions.DEFAULT.withStrength(in.readInt());
+            if (version > 1) {
+                options = options.withMaximumRunLength(in.readInt())
+                        .withLumaWeights(in.readInt(), in.readInt(), in.readInt()).withPatterns(in.readInt());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("broken edge map header: " + e.getMessage());
+        }
+
+        long size = (long) width * height;
+        int[][] starts = new int[8][];
+        int[][] lengths = new int[8][];
+        for (int i = 0; i < 8; i++) {
+            int count = readVarInt(in);
+            if (count > size) {
+                throw new IOException("edge map has more patterns than pixels");
+            }
+            starts[i] = new int[count];
+            lengths[i] = new int[count];
+            long last = 0;
+            for (int n = 0; n < count; n++) {
+                int gap = readVarInt(in);
+                long start = last + gap;
+                int length = readVarInt(in);
+                // starts only go forwards, and every pattern has to stay inside the image
+                if (gap < 0 || (n > 0 && gap == 0) || start >= size || length < 1) {
+                    throw new IOException("broken edge map");
+                }
+                long x = start / height;
+                long y = start % height;
+                long endX = x + (long) FusedPatternDetector.STEP_X[i] * (length - 1);
+                long endY = y + (long) FusedPatternDetector.STEP_Y[i] * (length - 1);
+                long primaryX = x + FusedPatternDetector.PRIMARY_X[i];
+                long primaryY = y + FusedPatternDetector.PRIMARY_Y[i];
+                if (endX < 0 || endX >= width || endY < 0 || endY >= height || primaryX < 0 || primaryX >= width
+                        || primaryY < 0 || primaryY >= height) {
+                    throw new IOException("edge map has a pattern running out of the image");
+                }
+                starts[i][n] = (int) start;
+                lengths[i][n] = length;
+                last = start;
+            }
+        }
+        return new EdgeMap(width, height, options, starts, lengths);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("broken edge map");
+    }
+
+    /*
+     * Finds the patterns of an image and writes them to a file, or blends an image with the
+     * patterns from a file.
+     *
+     * Usage: java EdgeMap detect <image> <edge map>
+     *        java EdgeMap blend <image> <edge map> <output image>
+     */
+    public static void main(String[] args) throws Exception {
+
+        boolean detect = args.length == 3 && args[0].equals("detect");
+        boolean blend = args.length == 4 && args[0].equals("blend");
+        if (!detect && !blend) {
+            System.err.println("Usage: java EdgeMap detect <image> <edge map>");
+            System.err.println("       java EdgeMap blend <image> <edge map> <output image>");
+            System.exit(1);
+        }
+        BufferedImage image = ImageIO.read(new File(args[1]));
+        if (image == null) {
+            throw new IOException("can't read " + args[1]);
+        }
+
+        MLAAEngine engine = new MLAAEngine(50);
+        if (detect) {
+            try (OutputStream out = new FileOutputStream(args[2])) {
+                engine.detect(image).write(out);
+            }
+        } else {
+            EdgeMap map;
+            try (InputStream in = new FileInputStream(args[2])) {
+                map = read(in);
+            }
+            String name = args[3];
+            if (!ImageIO.write(engine.blend(image, map), name.substring(name.lastIndexOf('.') + 1), new File(name))) {
+                throw new IOException("no ImageWriter for " + name);
+            }
+        }
+    }
+}
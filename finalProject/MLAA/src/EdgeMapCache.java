@@ -0,0 +1,137 @@
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class EdgeMapCache {
+
+    // the cache holds edge maps up to this many bytes by default
+    protected static final long DEFAULT_MAXIMUM_BYTES = 64L << 20;
+
+    private long maximumBytes;
+    private long bytes;
+    // edge maps by content hash and detection options, the least recently used first
+    private LinkedHashMap<Key, EdgeMap> maps = new LinkedHashMap<Key, EdgeMap>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    /*
+     * What an edge map is looked up by
+     */
+    private static class Key {
+        private long hash;
+        private MLAAOptions options;
+
+        private Key(long hash, MLAAOptions options) {
+            this.hash = hash;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash && ((Key) other).options.equals(options);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + options.hashCode();
+        }
+    }
+
+    protected EdgeMapCache() {
+        this(DEFAULT_MAXIMUM_BYTES);
+    }
+
+    /*
+     * @param maximumBytes most memory the edge maps in the cache may take up together; the least
+     * recently used ones are dropped to stay under it
+     */
+    protected EdgeMapCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    /*
+     * Looks the image up by its content, and only searches it when no image with the same pixels
+     * has been searched with the engine's options (or ones that find the same patterns) before
+     *
+     * @return the patterns of the image
+     */
+    protected EdgeMap detect(MLAAEngine engine, BufferedImage image) {
+
+        long hash = hash(image);
+        EdgeMap map = get(hash, engine.getOptions().detectionOptions());
+        if (map == null) {
+            map = engine.detect(image);
+            put(hash, map);
+        }
+        return map;
+    }
+
+    /*
+     * @param options detection options the map was found with (see
+     * MLAAOptions.detectionOptions)
+     * @return edge map stored for the hash and options, or null if there is none
+     */
+    protected synchronized EdgeMap get(long hash, MLAAOptions options) {
+
+        EdgeMap map = maps.get(new Key(hash, options));
+        if (map == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return map;
+    }
+
+    /*
+     * Stores an edge map under the content hash of its image. A map bigger than the whole cache
+     * isn't stored.
+     */
+    protected synchronized void put(long hash, EdgeMap map) {
+
+        if (map.getBytes() > maximumBytes) {
+            return;
+        }
+        EdgeMap old = maps.put(new Key(hash, map.getOptions()), map);
+        if (old != null) {
+            bytes -= old.getBytes();
+        }
+        bytes += map.getBytes();
+
+        Iterator<Map.Entry<Key, EdgeMap>> it = maps.entrySet().iterator();
+        while (bytes > maximumBytes && it.hasNext()) {
+            bytes -= it.next().getValue().getBytes();
+            it.remove();
+        }
+    }
+
+    /*
+     * @return memory the edge maps in the cache take up
+     */
+    protected synchronized long getBytes() {
+        return bytes;
+    }
+
+    protected synchronized int size() {
+        return maps.size();
+    }
+
+    protected synchronized long getHits() {
+        return hits;
+    }
+
+    protected synchronized long getMisses() {
+        return misses;
+    }
+
+    /*
+     * Hashes the image's data buffer as it is, like ContentHash does, but without alpha, which
+     * doesn't change which patterns are found
+     *
+     * @return 64 bit hash of what the image looks like
+     */
+    protected static long hash(BufferedImage image) {
+        return ContentHash.hash(image, false);
+    }
+}
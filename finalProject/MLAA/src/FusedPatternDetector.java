@@ -0,0 +1,385 @@
+import java.util.concurrent.ForkJoinPool;
+
+public class FusedPatternDetector {
+
+    // for each of the 8 patterns: where the secondary edge neighbour sits, where the primary edge
+    // neighbour sits, and which way the pattern stretches once it has been found. These match the
+    // diagrams above locatingPattern1 through locatingPattern8 in AlgorithmMLAA.
+    protected static final int[] SECONDARY_X = { 0, 0, 1, -1, 0, 0, 1, -1 };
+    protected static final int[] SECONDARY_Y = { -1, -1, 0, 0, 1, 1, 0, 0 };
+    protected static final int[] PRIMARY_X = { 1, -1, 0, 0, 1, -1, 0, 0 };
+    protected static final int[] PRIMARY_Y = { 0, 0, -1, -1, 0, 0, 1, 1 };
+    protected static final int[] STEP_X = { 0, 0, -1, 1, 0, 0, -1, 1 };
+    protected static final int[] STEP_Y = { 1, 1, 0, 0, -1, -1, 0, 0 };
+
+    // the same neighbours as edge bits (see EdgeKernel): the bits a pixel has to have for each
+    // pattern to start there, and the bit every pixel along the pattern has to have
+    private static final int[] DARKER_START = new int[8];
+    private static final int[] LIGHTER_START = new int[8];
+    private static final int[] DARKER_PRIMARY = new int[8];
+    private static final int[] LIGHTER_PRIMARY = new int[8];
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            DARKER_PRIMARY[i] = edgeBit(PRIMARY_X[i], PRIMARY_Y[i], true);
+            LIGHTER_PRIMARY[i] = edgeBit(PRIMARY_X[i], PRIMARY_Y[i], false);
+            DARKER_START[i] = edgeBit(SECONDARY_X[i], SECONDARY_Y[i], true) | DARKER_PRIMARY[i];
+            LIGHTER_START[i] = edgeBit(SECONDARY_X[i], SECONDARY_Y[i], false) | LIGHTER_PRIMARY[i];
+        }
+    }
+
+    // what findLengths remembers about the last run it followed along a line (see followPattern):
+    // which way it went, and whether it is known to stop where it was last followed to
+    private static final int RUN_DARKER = 1;
+    private static final int RUN_LIGHTER = 1 << 1;
+    private static final int RUN_CLOSED = 1 << 2;
+    // runs that stop within this many pixels are simply followed; only longer ones are worth
+    // remembering
+    private static final int SHORT_RUN = 16;
+
+    // same meaning as the strength in AlgorithmMLAA
+    private int strength;
+    // patterns are cut off at this length
+    private int maximumRunLength;
+    // the patterns searched for, by number (0 to 7)
+    private int[] patterns;
+    // luminance of every channel value for weights other than the default ones, or null
+    private int[] lumaTable;
+
+    protected FusedPatternDetector(int strength) {
+        this(MLAAOptions.DEFAULT.withStrength(strength));
+    }
+
+    /*
+     * Sets up a detector that finds patterns the way the options say. The alpha handling in the
+     * options isn't used here; it only matters to PatternBlender.
+     */
+    protected FusedPatternDetector(MLAAOptions options) {
+
+        strength = options.getStrength();
+        maximumRunLength = options.getMaximumRunLength() > 0 ? options.getMaximumRunLength() : Integer.MAX_VALUE;
+        patterns = new int[Integer.bitCount(options.getPatterns())];
+        for (int i = 0, j = 0; i < 8; i++) {
+            if (options.isPatternEnabled(i)) {
+                patterns[j++] = i;
+            }
+        }
+        lumaTable = options.lumaTable();
+    }
+
+    /*
+     * @return strength the patterns are found with
+     */
+    protected int getStrength() {
+        return strength;
+    }
+
+    /*
+     * Computes the luminance of every pixel once, then finds all 8 "L" patterns in one sweep.
+     * The patterns found are identical to the ones locatingPattern1 through locatingPattern8
+     * find (see PatternMasks.toChangedPixels and toPatternLengths).
+     *
+     * @return where each pattern starts and how long it is
+     */
+    protected PatternMasks detect(PixelRaster raster) {
+        return detect(raster, null);
+    }
+
+    /*
+     * Same as above, but when a pool is given the image is split into strips of columns that are
+     * searched in parallel. A pattern that runs past the end of its strip is still followed to the
+     * end, so the result is the same as searching the image in one go.
+     *
+     * @return where each pattern starts and how long it is
+     */
+    protected PatternMasks detect(PixelRaster raster, ForkJoinPool pool) {
+        return detect(raster, new LumaPlane(), new PatternMasks(), pool);
+    }
+
+    /*
+     * Same as above, but fills in a luminance plane and masks that are reused from call to call
+     * instead of allocating new ones. The detector itself keeps nothing between calls, so one
+     * detector can be used by several threads as long as each brings its own plane and masks.
+     *
+     * @return masks, filled in
+     */
+    protected PatternMasks detect(PixelRaster raster, LumaPlane luminance, PatternMasks masks, ForkJoinPool pool) {
+        return detect(raster, luminance, masks, pool, null);
+    }
+
+    /*
+     * Same as above, and when metrics are given, times each phase into them
+     *
+     * @return masks, filled in
+     */
+    protected PatternMasks detect(PixelRaster raster, LumaPlane luminance, PatternMasks masks, ForkJoinPool pool,
+            MLAAMetrics metrics) {
+
+        int width = raster.getWidth();
+        long start = metrics != null ? System.nanoTime() : 0;
+        luminance.load(raster, strength, lumaTable);
+        masks.reset(width, raster.getHeight());
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.setEdgeNanos(now - start);
+            start = now;
+        }
+
+        // first mark where every pattern starts, then follow each one to find its length. Every
+        // column has its own part of the masks, so strips of columns never get in each other's way.
+        if (pool == null) {
+            findStarts(luminance, masks, 0, width);
+            masks.countStarts();
+        } else {
+            StripTask.run(pool, width, (from, to) -> findStarts(luminance, masks, from, to));
+            masks.countStarts();
+        }
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.setStartNanos(now - start);
+            start = now;
+        }
+        if (pool == null) {
+            findLengths(luminance, masks, 0, width);
+        } else {
+            StripTask.run(pool, width, (from, to) -> findLengths(luminance, masks, from, to));
+        }
+        if (metrics != null) {
+            metrics.setLengthNanos(System.nanoTime() - start);
+        }
+
+        return masks;
+    }
+
+    /*
+     * Marks every pixel in the columns from fromX (inclusive) to toX (exclusive) where one of the
+     * 8 patterns starts. The masks are kept column by column, so the edge bits of the columns are
+     * transposed first; both are then gone through one after the other.
+     */
+    private void findStarts(LumaPlane luminance, PatternMasks masks, int fromX, int toX) {
+
+        int height = luminance.getHeight();
+        luminance.transpose(fromX, toX);
+
+        for (int x = fromX; x < toX; x++) {
+            for (int y = 0, index = x * height; y < height; y++, index++) {
+                int edges = luminance.getColumnEdges(index);
+                if (edges == 0) {
+                    continue;
+                }
+                for (int i : patterns) {
+                    if (startDirection(edges, i) != 0) {
+                        masks.setStart(i, x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Follows every pattern starting in the columns from fromX (inclusive) to toX (exclusive) and
+     * stores its length. Every pixel of a run is stepped over once, however many patterns start
+     * along it.
+     */
+    private void findLengths(LumaPlane luminance, PatternMasks masks, int fromX, int toX) {
+
+        int height = luminance.getHeight();
+        int[] longest = new int[8];
+
+        // the last run followed along every line: one column at a time for the vertical patterns,
+        // every row at once for the horizontal ones, since the columns are visited one by one
+        int[][] runs = new int[8][];
+        for (int i : patterns) {
+            runs[i] = new int[3 * (STEP_X[i] == 0 ? 1 : height)];
+        }
+
+        for (int x = fromX; x < toX; x++) {
+            for (int i : patterns) {
+                if (STEP_X[i] == 0) {
+                    runs[i][2] = 0;
+                }
+                for (int y = masks.nextStart(i, x, 0, height); y >= 0; y = masks.nextStart(i, x, y + 1, height)) {
+                    boolean darker = startDirection(luminance.getColumnEdges(x * height + y), i) < 0;
+                    int patternLength = followPattern(luminance, i, x, y, darker, runs[i], STEP_X[i] == 0 ? 0 : y);
+                    masks.setLength(i, x, y, patternLength);
+                    longest[i] = Math.max(longest[i], patternLength);
+                }
+            }
+        }
+
+        masks.updateLongestPatterns(longest);
+    }
+
+    /*
+     * @return -1 if pattern i starts at a pixel with these edge bits with dark pixels against
+     * light pixels, 1 if it starts with light pixels against dark pixels, and 0 if it doesn't
+     * start there
+     */
+    private static int startDirection(int edges, int i) {
+
+        // neighbours outside the image never have an edge bit, so this also keeps us in bounds
+        if ((edges & DARKER_START[i]) == DARKER_START[i]) {
+            return -1;
+        } else if ((edges & LIGHTER_START[i]) == LIGHTER_START[i]) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /*
+     * Continues along the primary edge of pattern i from (x, y), at most up to the maximum run
+     * length. Most patterns are short and are simply followed here; longer ones go on in
+     * followLongPattern.
+     *
+     * @return length of the pattern starting at (x, y)
+     */
+    private int followPattern(LumaPlane luminance, int i, int x, int y, boolean darker, int[] runs, int line) {
+
+        int primaryEdge = darker ? DARKER_PRIMARY[i] : LIGHTER_PRIMARY[i];
+        int limit = Math.min(maximumRunLength, SHORT_RUN);
+        // vertical patterns are followed down their column and horizontal ones along their row,
+        // both in the layout that has the next pixel right after this one
+        boolean vertical = STEP_X[i] == 0;
+        int step = vertical ? STEP_Y[i] : STEP_X[i];
+        int lineLength = vertical ? luminance.getHeight() : luminance.getWidth();
+        int position = (vertical ? y : x) + step;
+        int index = (vertical ? x * lineLength + y : y * lineLength + x) + step;
+        // a pattern can technically be 1 pixel; each length found starts at 1
+        int patternLength = 1;
+
+        // the primary edge neighbour of the starting pixel was in bounds, so only the step along
+        // the edge can leave the image
+        while (patternLength < limit && position >= 0 && position < lineLength
+                && (edgesAt(luminance, vertical, index) & primaryEdge) != 0) {
+            position += step;
+            index += step;
+            patternLength += 1;
+        }
+
+        if (patternLength < limit || limit == maximumRunLength) {
+            return patternLength;
+        }
+        return followLongPattern(luminance, i, x, y, darker, runs, line);
+    }
+
+    /*
+     * Same as followPattern, for patterns at least SHORT_RUN long.
+     *
+     * Positions along the line are counted the way the pattern stretches. runs holds, for each
+     * line, the stretch [from, to) of the last run followed, every pixel of which has the primary
+     * edge, and RUN_* flags. Starts on a line are visited in order, so each one either lies inside
+     * that stretch, and only has to be followed on from its end, or lies before it, and runs into
+     * it or stops first. Either way no pixel of a long run is stepped over twice, which keeps long
+     * edges with patterns starting all along them (dithered borders, for one) linear instead of
+     * quadratic.
+     *
+     * @return length of the pattern starting at (x, y)
+     */
+    private int followLongPattern(LumaPlane luminance, int i, int x, int y, boolean darker, int[] runs,
+            int line) {
+
+        int primaryEdge = darker ? DARKER_PRIMARY[i] : LIGHTER_PRIMARY[i];
+        int direction = darker ? RUN_DARKER : RUN_LIGHTER;
+        boolean vertical = STEP_X[i] == 0;
+        int step = vertical ? STEP_Y[i] : STEP_X[i];
+        int lineLength = vertical ? luminance.getHeight() : luminance.getWidth();
+        // index of the first pixel of the line the pattern is on
+        int lineIndex = vertical ? x * lineLength : y * lineLength;
+        int start = (vertical ? y : x) * step;
+        // first position past the edge of the image, and first position past the pattern's
+        // maximum length
+        int imageEnd = step > 0 ? lineLength : 1;
+        int end = maximumRunLength >= imageEnd - start ? imageEnd : start + maximumRunLength;
+
+        // what runs remembers is true whenever it was found, so short runs don't need to update it
+        int run = 3 * line;
+        int next;
+        int state = runs[run + 2];
+        int from = runs[run];
+        int to = runs[run + 1];
+        // where the last run starts if this one can run into it
+        int join;
+        if ((state & direction) != 0 && start >= from && start < to) {
+            // a pixel of the last run, which ends at the same place
+            if ((state & RUN_CLOSED) != 0 || to >= end) {
+                return Math.min(to, end) - start;
+            }
+            next = to;
+            join = end;
+        } else {
+            join = (state & direction) != 0 && start < from ? Math.min(from, end) : end;
+            from = start;
+            next = start + 1;
+        }
+
+        next = walk(luminance, vertical, primaryEdge, next, join, lineIndex + next * step, step);
+        boolean closed;
+        if (next == join && join < end) {
+            // ran into the last run, so it ends where that one does
+            next = to;
+            closed = (state & RUN_CLOSED) != 0;
+            if (!closed && next < end) {
+                next = walk(luminance, vertical, primaryEdge, next, end, lineIndex + next * step, step);
+                closed = next < end || end == imageEnd;
+            }
+        } else {
+            closed = next < join || end == imageEnd;
+        }
+
+        runs[run] = from;
+        runs[run + 1] = next;
+        runs[run + 2] = direction | (closed ? RUN_CLOSED : 0);
+        return Math.min(next, end) - start;
+    }
+
+    /*
+     * Steps along a pattern from position next, the pixel at index, while the pixels have the
+     * primary edge, stopping at position stop
+     *
+     * @return first position without the primary edge, or stop
+     */
+    private static int walk(LumaPlane luminance, boolean vertical, int primaryEdge, int next, int stop, int index,
+            int indexStep) {
+
+        while (next < stop && (edgesAt(luminance, vertical, index) & primaryEdge) != 0) {
+            next++;
+            index += indexStep;
+        }
+        return next;
+    }
+
+    /*
+     * @return edge bits of the pixel at index, counted column by column when vertical and row by
+     * row otherwise
+     */
+    private static int edgesAt(LumaPlane luminance, boolean vertical, int index) {
+        return vertical ? luminance.getColumnEdges(index) : luminance.getEdges(index);
+    }
+
+    /*
+     * @return edge bits every pixel along pattern i has one of: darker or lighter than its primary
+     * edge neighbour
+     */
+    protected static int primaryEdges(int i) {
+        return DARKER_PRIMARY[i] | LIGHTER_PRIMARY[i];
+    }
+
+    /*
+     * @return edge bit for the neighbour at (dx, dy)
+     */
+    private static int edgeBit(int dx, int dy, boolean darker) {
+
+        int bit;
+        if (dx < 0) {
+            bit = EdgeKernel.DARKER_LEFT;
+        } else if (dx > 0) {
+            bit = EdgeKernel.DARKER_RIGHT;
+        } else if (dy < 0) {
+            bit = EdgeKernel.DARKER_UP;
+        } else {
+            bit = EdgeKernel.DARKER_DOWN;
+        }
+        // each lighter bit sits four above its darker bit
+        return darker ? bit : bit << 4;
+    }
+}
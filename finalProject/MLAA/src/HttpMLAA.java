@@ -0,0 +1,490 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpMLAA {
+
+    // largest image blended, in pixels, and largest request body read, which is the raw frame of
+    // the largest image; anything bigger gets 413
+    private static final long MAXIMUM_PIXELS = 8192L * 8192L;
+    private static final int MAXIMUM_BODY = (int) (RawFrame.HEADER_SIZE + 4 * MAXIMUM_PIXELS);
+
+    // bodies that don't say how long they are are read this many bytes at a time, and responses
+    // are written this many bytes at a time
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // latencies the percentiles on /metrics are worked out from
+    private static final int LATENCY_WINDOW = 4096;
+
+    /*
+     * A request that can't be done, and the status it is answered with
+     */
+    private static class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private int status;
+
+        private RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /*
+     * The last LATENCY_WINDOW latencies, oldest overwritten first
+     */
+    private static class Latencies {
+        private long[] nanos = new long[LATENCY_WINDOW];
+        private long count;
+
+        private synchronized void record(long latency) {
+            nanos[(int) (count++ % LATENCY_WINDOW)] = latency;
+        }
+
+        /*
+         * @return the given percentiles (0 to 100) of the latencies kept, in nanoseconds, or 0s
+         * before anything has been recorded
+         */
+        private long[] percentiles(double... percentiles) {
+
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(nanos, (int) Math.min(count, LATENCY_WINDOW));
+            }
+            Arrays.sort(sorted);
+            long[] values = new long[percentiles.length];
+            for (int i = 0; i < percentiles.length && sorted.length > 0; i++) {
+                int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+                values[i] = sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+            }
+            return values;
+        }
+    }
+
+    private MLAAEngine engine = new MLAAEngine(50);
+    private HttpServer server;
+
+    // requests are read and answered on the server's threads, but decoded, blended and encoded on
+    // a fixed number of platform threads. A request is only let in while fewer than admitted
+    // requests hold a body, and its body is only read while the bodies held add up to no more
+    // than the bytes bodyBytes has, so a burst gets 429s instead of filling the heap with bodies
+    // waiting for a compute thread.
+    private ExecutorService compute;
+    private Semaphore admitted;
+    private Semaphore bodyBytes;
+
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong completed = new AtomicLong();
+    private AtomicLong rejected = new AtomicLong();
+    private AtomicLong tooLarge = new AtomicLong();
+    private AtomicLong badRequests = new AtomicLong();
+    private AtomicLong failed = new AtomicLong();
+    private AtomicLong pixels = new AtomicLong();
+    private AtomicInteger inFlight = new AtomicInteger();
+    // from the request being let in to the response being sent, and the part of it spent on a
+    // compute thread
+    private Latencies requestLatencies = new Latencies();
+    private Latencies computeLatencies = new Latencies();
+
+    private HttpMLAA(int port, int threads) throws IOException {
+
+        AtomicInteger names = new AtomicInteger();
+        compute = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "mlaa-" + names.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        admitted = new Semaphore(threads * 2);
+        // a quarter of the heap, but at least enough for the largest body read in chunks, which
+        // briefly needs its chunks and the body they are copied into
+        bodyBytes = new Semaphore((int) Math.min(Integer.MAX_VALUE,
+                Math.max(2L * MAXIMUM_BODY + CHUNK_SIZE, Runtime.getRuntime().maxMemory() / 4)));
+
+        // only reachable from this machine
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestExecutor());
+        server.createContext("/mlaa", this::handleImage);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /*
+     * Serves MLAA over HTTP, so images can be anti-aliased by one warm process instead of a JVM
+     * started per image. Listens on the loopback address only.
+     *
+     *     POST /mlaa       a PNG (or anything else ImageIO reads) or a raw frame (see RawFrame);
+     *                      the answer is the same image with MLAA, as a PNG or a raw frame in the
+     *                      same channel order. The query can set strength, maximumRunLength,
+     *                      patterns, alpha and blend (see MLAAOptions), e.g.
+     *                      ?strength=30&blend=accumulate
+     *     GET /metrics     request counts and latency percentiles, as text
+     *
+     * Usage: java HttpMLAA [port] [threads]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length > 2) {
+            System.err.println("Usage: java HttpMLAA [port] [threads]");
+            System.exit(1);
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        HttpMLAA service = new HttpMLAA(port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.server.stop(1);
+            service.compute.shutdown();
+        }));
+        service.server.start();
+        System.out.println(String.format(Locale.ROOT, "listening on %s with %d compute threads",
+                service.server.getAddress(), threads));
+    }
+
+    /*
+     * A virtual thread for every request where the JVM has them (Java 21, or 19 and 20 with
+     * --enable-preview). Anywhere else requests get pooled platform threads, which only read and
+     * write bodies, so they are cheap enough.
+     *
+     * @return the executor requests are handled on
+     */
+    private static ExecutorService requestExecutor() {
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+
+        requests.incrementAndGet();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                throw new RequestException(405, "only POST is supported");
+            }
+            MLAAOptions options = parseOptions(exchange.getRequestURI().getRawQuery());
+            String header = exchange.getRequestHeaders().getFirst("Content-Length");
+            long length = header != null ? Long.parseLong(header) : -1;
+            if (header != null && length < 0) {
+                throw new RequestException(400, "bad Content-Length");
+            }
+            if (length > MAXIMUM_BODY) {
+                throw new RequestException(413, "body is larger than " + MAXIMUM_BODY + " bytes");
+            }
+            if (!admitted.tryAcquire()) {
+                throw new RequestException(429, "too many requests");
+            }
+
+            long start = System.nanoTime();
+            inFlight.incrementAndGet();
+            try {
+                byte[] body = readBody(exchange.getRequestBody(), length);
+                try {
+                    boolean raw = isRawFrame(body);
+                    Future<byte[]> result = compute.submit(() -> {
+                        long computeStart = System.nanoTime();
+                        byte[] blended = raw ? blendFrame(body, options) : blendImage(body, options);
+                        computeLatencies.record(System.nanoTime() - computeStart);
+                        return blended;
+                    });
+                    byte[] response = await(result);
+
+                    exchange.getResponseHeaders().set("Content-Type",
+                            raw ? "application/octet-stream" : "image/png");
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        // the server copies whatever is written in one go, so a frame is written
+                        // a chunk at a time rather than copied whole
+                        for (int offset = 0; offset < response.length; offset += CHUNK_SIZE) {
+                            out.write(response, offset, Math.min(CHUNK_SIZE, response.length - offset));
+                        }
+                    }
+                    completed.incrementAndGet();
+                    requestLatencies.record(System.nanoTime() - start);
+                } finally {
+                    bodyBytes.release(body.length);
+                }
+            } finally {
+                inFlight.decrementAndGet();
+                admitted.release();
+            }
+        } catch (RequestException e) {
+            if (e.status == 429) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            count(e.status);
+            sendText(exchange, e.status, e.getMessage() + "\n");
+        } catch (NumberFormatException e) {
+            count(400);
+            sendText(exchange, 400, "bad number: " + e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            count(500);
+            sendText(exchange, 500, e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendText(exchange, 405, "only GET is supported\n");
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "requests %d%n", requests.get()));
+            text.append(String.format(Locale.ROOT, "completed %d%n", completed.get()));
+            text.append(String.format(Locale.ROOT, "rejected %d%n", rejected.get()));
+            text.append(String.format(Locale.ROOT, "too_large %d%n", tooLarge.get()));
+            text.append(String.format(Locale.ROOT, "bad_requests %d%n", badRequests.get()));
+            text.append(String.format(Locale.ROOT, "failed %d%n", failed.get()));
+            text.append(String.format(Locale.ROOT, "in_flight %d%n", inFlight.get()));
+            text.append(String.format(Locale.ROOT, "pixels %d%n", pixels.get()));
+            appendPercentiles(text, "request", requestLatencies);
+            appendPercentiles(text, "compute", computeLatencies);
+            sendText(exchange, 200, text.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void appendPercentiles(StringBuilder text, String name, Latencies latencies) {
+
+        double[] percentiles = { 50, 90, 99, 100 };
+        long[] values = latencies.percentiles(percentiles);
+        for (int i = 0; i < percentiles.length; i++) {
+            text.append(String.format(Locale.ROOT, "%s_latency_ms{p=\"%s\"} %.3f%n", name,
+                    percentiles[i] == 100 ? "max" : String.valueOf((int) percentiles[i]), values[i] / 1e6));
+        }
+    }
+
+    /*
+     * @return the default options with whatever the query sets
+     */
+    private MLAAOptions parseOptions(String query) throws RequestException {
+
+        MLAAOptions options = engine.getOptions();
+        if (query == null || query.isEmpty()) {
+            return options;
+        }
+        try {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals),
+                        StandardCharsets.UTF_8);
+                String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1),
+                        StandardCharsets.UTF_8);
+                options = options.withParameter(name, value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        return options;
+    }
+
+    /*
+     * Reads the whole body, taking its bytes from bodyBytes before they are read; the caller gives
+     * them back once it is done with the body. A body whose length is known takes all of it at
+     * once, any other a chunk at a time as it comes in.
+     *
+     * @param length the Content-Length, or -1 if the request has none
+     * @return the whole body, if it isn't larger than MAXIMUM_BODY
+     */
+    private byte[] readBody(InputStream in, long length) throws IOException, RequestException {
+
+        int held = 0;
+        try (InputStream body = in) {
+            if (length >= 0) {
+                held = takeBodyBytes((int) length);
+                byte[] bytes = body.readNBytes((int) length);
+                if (bytes.length != length) {
+                    throw new RequestException(400, "body is shorter than its Content-Length");
+                }
+                return bytes;
+            }
+
+            List<byte[]> chunks = new ArrayList<byte[]>();
+            int total = 0;
+            while (true) {
+                held += takeBodyBytes(CHUNK_SIZE);
+                byte[] chunk = body.readNBytes(CHUNK_SIZE);
+                chunks.add(chunk);
+                total += chunk.length;
+                if (total > MAXIMUM_BODY) {
+                    throw new RequestException(413, "body is larger than " + MAXIMUM_BODY + " bytes");
+                }
+                if (chunk.length < CHUNK_SIZE) {
+                    break;
+                }
+            }
+            held += takeBodyBytes(total);
+            byte[] bytes = new byte[total];
+            int offset = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+                offset += chunk.length;
+            }
+            // the chunks are garbage now, so only the body's own bytes stay taken
+            bodyBytes.release(held - total);
+            held = total;
+            return bytes;
+        } catch (IOException | RequestException | RuntimeException e) {
+            bodyBytes.release(held);
+            throw e;
+        }
+    }
+
+    /*
+     * @return bytes, once they are taken from bodyBytes
+     */
+    private int takeBodyBytes(int bytes) throws RequestException {
+
+        if (!bodyBytes.tryAcquire(bytes)) {
+            throw new RequestException(429, "too many request bodies held");
+        }
+        return bytes;
+    }
+
+    /*
+     * @return the result of a compute task, with what it failed with thrown as is
+     */
+    private static byte[] await(Future<byte[]> result) throws IOException, RequestException {
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for MLAA", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RequestException) {
+                throw (RequestException) cause;
+            } else if (cause instanceof IOException) {
+                // the body couldn't be decoded
+                throw new RequestException(400, cause.getMessage());
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static boolean isRawFrame(byte[] body) {
+        return body.length >= RawFrame.HEADER_SIZE
+                && ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == RawFrame.MAGIC;
+    }
+
+    /*
+     * Decodes an image, checking its size before its pixels are read
+     *
+     * @return the image with MLAA, as a PNG
+     */
+    private byte[] blendImage(byte[] body, MLAAOptions options) throws IOException, RequestException {
+
+        BufferedImage image;
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(body))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new RequestException(415, "not a raw frame or an image ImageIO can read");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                checkSize(reader.getWidth(0), reader.getHeight(0));
+                image = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        engine.algorithm(image, options);
+        pixels.addAndGet((long) image.getWidth() * image.getHeight());
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(body.length + (body.length >> 2));
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    /*
+     * Blends a raw frame in place in the body it came in
+     *
+     * @return body, with MLAA
+     */
+    private byte[] blendFrame(byte[] body, MLAAOptions options) throws IOException, RequestException {
+
+        ByteBuffer header = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        int width = header.getInt(4);
+        int height = header.getInt(8);
+        checkSize(width, height);
+        if (width < 0 || height < 0 || body.length != RawFrame.HEADER_SIZE + 4L * width * height) {
+            throw new RequestException(400, "raw frame body doesn't match its header");
+        }
+
+        engine.algorithm(RawFrame.wrap(ByteBuffer.wrap(body)), options, null);
+        pixels.addAndGet((long) width * height);
+        return body;
+    }
+
+    private static void checkSize(int width, int height) throws RequestException {
+
+        if ((long) width * height > MAXIMUM_PIXELS) {
+            throw new RequestException(413, String.format(Locale.ROOT, "%dx%d is more than %d pixels", width,
+                    height, MAXIMUM_PIXELS));
+        }
+    }
+
+    private void count(int status) {
+
+        if (status == 429) {
+            rejected.incrementAndGet();
+        } else if (status == 413) {
+            tooLarge.incrementAndGet();
+        } else if (status >= 500) {
+            failed.incrementAndGet();
+        } else {
+            badRequests.incrementAndGet();
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
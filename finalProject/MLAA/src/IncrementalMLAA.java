@@ -0,0 +1,424 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+public class IncrementalMLAA {
+
+    // context read around a dirty rectangle at first; doubled for as long as it isn't enough
+    protected static final int DEFAULT_MARGIN = 16;
+
+    private FusedPatternDetector detector;
+    private PatternBlender blender;
+    private BlendWeights weights;
+    private int margin;
+
+    // scratch space for one window, kept for the next one
+    private BufferedImage window;
+    private LumaPlane luminance = new LumaPlane();
+    private PatternMasks masks = new PatternMasks();
+    private boolean[] covered = new boolean[0];
+    // pixels of the window the edit may change, and pixels the window can't get right because
+    // it doesn't see the image around it
+    private Spread changed = new Spread();
+    private Spread unknown = new Spread();
+
+    // what the last update cost, for reports
+    private long recomputedPixels;
+    private long changedPixels;
+
+    protected IncrementalMLAA(int strength) {
+        this(strength, DEFAULT_MARGIN);
+    }
+
+    /*
+     * @param margin context read around a dirty rectangle at first
+     */
+    protected IncrementalMLAA(int strength, int margin) {
+        this.weights = new BlendWeights();
+        this.detector = new FusedPatternDetector(strength);
+        this.blender = new PatternBlender(weights);
+        this.margin = Math.max(1, margin);
+    }
+
+    /*
+     * Brings the result of MLAA up to date after the image has been edited, recomputing only what
+     * the edit can reach. result must be what algorithm() made of the image before the edit (on a
+     * TYPE_INT_ARGB copy of it), and the image may only have changed inside the dirty rectangles.
+     *
+     * Each dirty rectangle is searched again in a window with a margin around it. The patterns
+     * whose edges run into the rectangle are followed out of it along their edge, the same way
+     * the locatingPattern loops follow them, and every pixel they blend, and every pixel blended
+     * towards one of those, is marked as changed. The same is worked out for the pixels at the
+     * edge of the window, which are the ones the window can get wrong. When the two meet, the
+     * margin is doubled and the rectangle is tried again, so the result is always the same as
+     * algorithm() on the whole edited image; the work done tracks the size of the edit and of the
+     * patterns through it, not the size of the image.
+     *
+     * @return result, with the changed pixels written into it
+     */
+    protected BufferedImage update(BufferedImage result, BufferedImage image, List<Rectangle> dirty) {
+
+        recomputedPixels = 0;
+        changedPixels = 0;
+        for (Rectangle rectangle : merge(dirty, image.getWidth(), image.getHeight())) {
+            update(result, image, rectangle);
+        }
+        return result;
+    }
+
+    /*
+     * @return number of pixels searched again in the last update, counting windows that had to be
+     * made bigger
+     */
+    protected long getRecomputedPixels() {
+        return recomputedPixels;
+    }
+
+    /*
+     * @return number of pixels written into the result in the last update
+     */
+    protected long getChangedPixels() {
+        return changedPixels;
+    }
+
+    /*
+     * Recomputes the result around a single dirty rectangle, which lies inside the image
+     */
+    private void update(BufferedImage result, BufferedImage image, Rectangle dirty) {
+
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+
+        for (int context = margin;; context *= 2) {
+            int left = Math.max(0, dirty.x - context);
+            int top = Math.max(0, dirty.y - context);
+            int right = Math.min(imageWidth, dirty.x + dirty.width + context);
+            int bottom = Math.min(imageHeight, dirty.y + dirty.height + context);
+            int width = right - left;
+            int height = bottom - top;
+            boolean whole = width == imageWidth && height == imageHeight;
+
+            BufferedImage windowImage = getWindow(width, height);
+            int[] pixels = ((DataBufferInt) windowImage.getRaster().getDataBuffer()).getData();
+            image.getRGB(left, top, width, height, pixels, 0, width);
+            PixelRaster raster = new PixelRaster(windowImage);
+            detector.detect(raster, luminance, masks, null);
+            recomputedPixels += (long) width * height;
+            if (covered.length < width * height) {
+                covered = new boolean[width * height];
+            }
+
+            // the pixels of the rectangle changed, and so may the edges of every pixel next to one
+            changed.reset(width * height);
+            for (int y = dirty.y; y < dirty.y + dirty.height; y++) {
+                for (int x = dirty.x; x < dirty.x + dirty.width; x++) {
+                    changed.mark((y - top) * width + x - left);
+                }
+            }
+            for (int y = Math.max(top, dirty.y - 1); y < Math.min(bottom, dirty.y + dirty.height + 1); y++) {
+                for (int x = Math.max(left, dirty.x - 1); x < Math.min(right, dirty.x + dirty.width + 1); x++) {
+                    changed.markEdges((y - top) * width + x - left);
+                }
+            }
+            spread(changed, width, height);
+
+            // the pixels along a side of the window that isn't a side of the image are missing
+            // the neighbours outside the window, so their edges may be wrong
+            unknown.reset(width * height);
+            for (int x = 0; x < width; x++) {
+                if (top > 0) {
+                    unknown.markEdges(x);
+                }
+                if (bottom < imageHeight) {
+                    unknown.markEdges((height - 1) * width + x);
+                }
+            }
+            for (int y = 0; y < height; y++) {
+                if (left > 0) {
+                    unknown.markEdges(y * width);
+                }
+                if (right < imageWidth) {
+                    unknown.markEdges(y * width + width - 1);
+                }
+            }
+            spread(unknown, width, height);
+
+            if (whole || isSeparate(width, height)) {
+                blender.blend(raster, masks);
+                for (int k = 0; k < changed.count; k++) {
+                    int index = changed.list[k];
+                    result.setRGB(left + index % width, top + index / width, pixels[index]);
+                }
+                changedPixels += changed.count;
+                return;
+            }
+        }
+    }
+
+    /*
+     * Follows the differences marked in spread through the eight passes of blending. A pattern
+     * running through a pixel whose edges may differ may start, stop or be a different length, so
+     * every pixel along its edge out from there is marked; any pixel blended towards a marked
+     * pixel is marked as well.
+     */
+    private void spread(Spread spread, int width, int height) {
+
+        for (int i = 0; i < 8; i++) {
+            markCovered(i, width, height, true);
+            int stepX = FusedPatternDetector.STEP_X[i];
+            int stepY = FusedPatternDetector.STEP_Y[i];
+            int primary = FusedPatternDetector.primaryEdges(i);
+
+            for (int k = 0; k < spread.edgeCount; k++) {
+                int index = spread.edgeList[k];
+                spread.mark(index);
+                int x = index % width;
+                int y = index / width;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    int tempX = x + sign * stepX;
+                    int tempY = y + sign * stepY;
+                    while (tempX >= 0 && tempX < width && tempY >= 0 && tempY < height) {
+                        int temp = tempY * width + tempX;
+                        if (spread.edges[temp] || (luminance.getEdges(temp) & primary) == 0) {
+                            break;
+                        }
+                        spread.mark(temp);
+                        tempX += sign * stepX;
+                        tempY += sign * stepY;
+                    }
+                }
+            }
+
+            // the list grows as pixels are marked, so chains of blended pixels are followed too
+            int primaryX = FusedPatternDetector.PRIMARY_X[i];
+            int primaryY = FusedPatternDetector.PRIMARY_Y[i];
+            for (int k = 0; k < spread.count; k++) {
+                int index = spread.list[k];
+                int x = index % width - primaryX;
+                int y = index / width - primaryY;
+                if (x >= 0 && x < width && y >= 0 && y < height && covered[y * width + x]) {
+                    spread.mark(y * width + x);
+                }
+            }
+
+            markCovered(i, width, height, false);
+        }
+    }
+
+    /*
+     * Sets or clears every pixel pattern i blends in covered
+     */
+    private void markCovered(int i, int width, int height, boolean value) {
+
+        int stepOffset = FusedPatternDetector.STEP_Y[i] * width + FusedPatternDetector.STEP_X[i];
+        int runs = masks.countPatterns(i);
+        for (int n = 0; n < runs; n++) {
+            int start = masks.getRunStart(i, n);
+            int blended = weights.getWeights(masks.getRunLength(i, n)).length;
+            for (int step = 0, index = (start % height) * width + start / height; step < blended;
+                    step++, index += stepOffset) {
+                covered[index] = value;
+            }
+        }
+    }
+
+    /*
+     * @return true if no pixel the edit may change is, or is next to, a pixel the window may get
+     * wrong
+     */
+    private boolean isSeparate(int width, int height) {
+
+        for (int k = 0; k < changed.count; k++) {
+            int index = changed.list[k];
+            int x = index % width;
+            int y = index / width;
+            if (unknown.marked[index] || (x > 0 && unknown.marked[index - 1])
+                    || (x < width - 1 && unknown.marked[index + 1]) || (y > 0 && unknown.marked[index - width])
+                    || (y < height - 1 && unknown.marked[index + width])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Clips the rectangles to the image and joins the ones that touch, since the edges between
+     * them depend on both
+     *
+     * @return rectangles covering every dirty pixel, none of them touching
+     */
+    private static List<Rectangle> merge(List<Rectangle> dirty, int width, int height) {
+
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        List<Rectangle> merged = new ArrayList<Rectangle>();
+        for (Rectangle rectangle : dirty) {
+            Rectangle joined = rectangle.intersection(bounds);
+            if (joined.isEmpty()) {
+                continue;
+            }
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (Iterator<Rectangle> it = merged.iterator(); it.hasNext();) {
+                    Rectangle other = it.next();
+                    if (new Rectangle(other.x - 1, other.y - 1, other.width + 2, other.height + 2).intersects(joined)) {
+                        joined = joined.union(other);
+                        it.remove();
+                        grown = true;
+                    }
+                }
+            }
+            merged.add(joined);
+        }
+        return merged;
+    }
+
+    /*
+     * @return TYPE_INT_ARGB image of the given size, the same one as last time if it fits
+     */
+    private BufferedImage getWindow(int width, int height) {
+
+        if (window == null || window.getWidth() != width || window.getHeight() != height) {
+            window = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return window;
+    }
+
+    /*
+     * Pixels of a window whose value may come out differently in two runs of MLAA
+     */
+    private static class Spread {
+
+        private boolean[] marked = new boolean[0];
+        private int[] list = new int[0];
+        private int count;
+        // pixels whose edge bits may differ; every one of them is marked as well
+        private boolean[] edges = new boolean[0];
+        private int[] edgeList = new int[0];
+        private int edgeCount;
+
+        /*
+         * Clears the marks for a window of size pixels
+         */
+        private void reset(int size) {
+
+            if (marked.length < size) {
+                marked = new boolean[size];
+                list = new int[size];
+                edges = new boolean[size];
+                edgeList = new int[size];
+            } else {
+                // only what was marked needs clearing
+                for (int k = 0; k < count; k++) {
+                    marked[list[k]] = false;
+                }
+                for (int k = 0; k < edgeCount; k++) {
+                    edges[edgeList[k]] = false;
+                }
+            }
+            count = 0;
+            edgeCount = 0;
+        }
+
+        private void mark(int index) {
+
+            if (!marked[index]) {
+                marked[index] = true;
+                list[count++] = index;
+            }
+        }
+
+        private void markEdges(int index) {
+
+            if (!edges[index]) {
+                edges[index] = true;
+                edgeList[edgeCount++] = index;
+            }
+            mark(index);
+        }
+    }
+
+    /*
+     * Paints random brush strokes over an image, bringing the result up to date after each one,
+     * and checks every result against algorithm() over the whole image.
+     *
+     * Usage: java IncrementalMLAA <image> [strokes] [brush size]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println("Usage: java IncrementalMLAA <image> [strokes] [brush size]");
+            System.exit(1);
+        }
+        int strokes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int brushSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        BufferedImage input = ImageIO.read(new File(args[0]));
+        if (input == null) {
+            throw new IOException("can't read " + args[0]);
+        }
+        int width = input.getWidth();
+        int height = input.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, input.getRGB(0, 0, width, height, null, 0, width), 0, width);
+
+        MLAAEngine engine = new MLAAEngine(50);
+        IncrementalMLAA incremental = new IncrementalMLAA(50);
+        BufferedImage result = engine.algorithm(copy(image));
+
+        Random random = new Random(1);
+        boolean failed = false;
+        for (int stroke = 0; stroke < strokes; stroke++) {
+            int x1 = random.nextInt(width);
+            int y1 = random.nextInt(height);
+            int x2 = Math.max(0, Math.min(width - 1, x1 + random.nextInt(81) - 40));
+            int y2 = Math.max(0, Math.min(height - 1, y1 + random.nextInt(81) - 40));
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(new Color(random.nextInt(0x1000000)));
+            graphics.setStroke(new BasicStroke(brushSize));
+            graphics.drawLine(x1, y1, x2, y2);
+            graphics.dispose();
+            Rectangle dirty = new Rectangle(Math.min(x1, x2) - brushSize, Math.min(y1, y2) - brushSize,
+                    Math.abs(x2 - x1) + 2 * brushSize + 1, Math.abs(y2 - y1) + 2 * brushSize + 1);
+
+            long start = System.nanoTime();
+            incremental.update(result, image, Collections.singletonList(dirty));
+            double incrementalMilliseconds = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            BufferedImage expected = engine.algorithm(copy(image));
+            double fullMilliseconds = (System.nanoTime() - start) / 1e6;
+
+            boolean same = Arrays.equals(result.getRGB(0, 0, width, height, null, 0, width),
+                    expected.getRGB(0, 0, width, height, null, 0, width));
+            failed |= !same;
+            System.out.println(String.format(Locale.ROOT,
+                    "stroke %d: %dx%d, %d pixels searched, %d changed, %.2f ms (whole image %.2f ms)%s", stroke,
+                    dirty.width, dirty.height, incremental.getRecomputedPixels(), incremental.getChangedPixels(),
+                    incrementalMilliseconds, fullMilliseconds, same ? "" : ", DIFFERENT"));
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        image.copyData(copy.getRaster());
+        return copy;
+    }
+}
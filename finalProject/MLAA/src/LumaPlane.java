@@ -0,0 +1,129 @@
+public class LumaPlane {
+
+    // luminance weights from AlgorithmMLAA multiplied by SCALE, so the luminance of every pixel is
+    // an exact integer: 0.2126 * R + 0.7152 * G + 0.0722 * B becomes 2126 * R + 7152 * G + 722 * B
+    protected static final int SCALE = 10000;
+    protected static final int RED_WEIGHT = 2126;
+    protected static final int GREEN_WEIGHT = 7152;
+    protected static final int BLUE_WEIGHT = 722;
+
+    // edge bits are copied column by column in tiles this many pixels square, so both the rows
+    // read and the columns written stay in cache
+    private static final int TILE = 32;
+
+    private int width;
+    private int height;
+    // luminance of every pixel multiplied by SCALE, row by row
+    private int[] luminance;
+    // which neighbours every pixel is darker or lighter than, row by row (see EdgeKernel)
+    private int[] edges;
+    // the same edge bits column by column, filled in by transpose; they fit in a byte each
+    private byte[] columnEdges;
+    private EdgeKernel kernel;
+
+    /*
+     * Creates an empty plane that uses the fastest edge kernel there is; call load before using it
+     */
+    protected LumaPlane() {
+        this(EdgeKernel.getDefault());
+    }
+
+    /*
+     * Creates an empty plane that uses the given edge kernel; call load before using it
+     */
+    protected LumaPlane(EdgeKernel kernel) {
+        this.kernel = kernel;
+        luminance = new int[0];
+        edges = new int[0];
+        columnEdges = new byte[0];
+    }
+
+    /*
+     * Computes the luminance of every pixel in the raster once
+     */
+    protected LumaPlane(PixelRaster raster, int strength) {
+        this();
+        load(raster, strength);
+    }
+
+    /*
+     * Computes the luminance of every pixel in the raster and compares it with its neighbours,
+     * reusing the plane's arrays when they are big enough
+     */
+    protected void load(PixelRaster raster, int strength) {
+        load(raster, strength, null);
+    }
+
+    /*
+     * Same as above, but with the luminance looked up in table when one is given (see
+     * MLAAOptions.lumaTable); without one the weights above are used
+     */
+    protected void load(PixelRaster raster, int strength, int[] table) {
+
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+
+        int size = width * height;
+        if (luminance.length < size) {
+            luminance = new int[size];
+            edges = new int[size];
+            columnEdges = new byte[size];
+        }
+        if (table == null) {
+            kernel.classify(raster, strength, luminance, edges);
+        } else {
+            EdgeKernel.classify(raster, strength, table, luminance, edges);
+        }
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * @return edge bits of the pixel at index: which neighbours it is darker or lighter than by more
+     * than the strength (see EdgeKernel)
+     */
+    protected int getEdges(int index) {
+        return edges[index];
+    }
+
+    /*
+     * Copies the edge bits of the columns from fromX (inclusive) to toX (exclusive) into the
+     * column by column layout, so walking down a column reads them one after the other instead of
+     * a whole row apart. Different threads can copy different columns at the same time.
+     */
+    protected void transpose(int fromX, int toX) {
+
+        for (int tileY = 0; tileY < height; tileY += TILE) {
+            int lastY = Math.min(height, tileY + TILE);
+            for (int tileX = fromX; tileX < toX; tileX += TILE) {
+                int lastX = Math.min(toX, tileX + TILE);
+                for (int y = tileY; y < lastY; y++) {
+                    int row = y * width;
+                    for (int x = tileX; x < lastX; x++) {
+                        columnEdges[x * height + y] = (byte) edges[row + x];
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Only filled in for the columns transpose has been called for.
+     *
+     * @return edge bits of the pixel at index, counted column by column: the pixel at (x, y) is at
+     * x * height + y
+     */
+    protected int getColumnEdges(int index) {
+        return columnEdges[index] & 0xFF;
+    }
+
+    protected EdgeKernel getKernel() {
+        return kernel;
+    }
+}
@@ -0,0 +1,40 @@
+public class MLAAContext {
+
+    // copy of the image's pixels, for images whose data can't be used directly
+    private int[] pixels = new int[0];
+    private LumaPlane luminance = new LumaPlane();
+    private PatternMasks masks = new PatternMasks();
+    // changes added up per pixel when patterns are accumulated (see PatternBlender.accumulate);
+    // every entry is back to 0 once an image is done
+    private long[] deltas = new long[0];
+
+    /*
+     * @return buffer for at least size pixels, grown if the last image was smaller
+     */
+    protected int[] getPixels(int size) {
+
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        return pixels;
+    }
+
+    /*
+     * @return buffer of changes for at least size pixels, all 0
+     */
+    protected long[] getDeltas(int size) {
+
+        if (deltas.length < size) {
+            deltas = new long[size];
+        }
+        return deltas;
+    }
+
+    protected LumaPlane getLuminance() {
+        return luminance;
+    }
+
+    protected PatternMasks getMasks() {
+        return masks;
+    }
+}
@@ -0,0 +1,327 @@
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+public class MLAAEngine {
+
+    // most detection options values a detector is kept for; past this, detectors are set up per call
+    private static final int MAXIMUM_CACHED_OPTIONS = 64;
+
+    // what calls without options of their own get
+    private MLAAOptions options;
+    // a detector for every detection options value seen so far, so options made anew for every call, e.g.
+    // from a request, don't set up their tables again; and a blender for every way of handling
+    // alpha, all sharing one table of weights
+    private ConcurrentHashMap<MLAAOptions, FusedPatternDetector> detectors =
+            new ConcurrentHashMap<MLAAOptions, FusedPatternDetector>();
+    private EnumMap<MLAAOptions.Alpha, PatternBlender> blenders =
+            new EnumMap<MLAAOptions.Alpha, PatternBlender>(MLAAOptions.Alpha.class);
+
+    // scratch buffers that aren't being used by a call right now. A call takes one (or makes a
+    // new one if they're all busy) and puts it back when it is done, so after warming up there
+    // is one set of buffers per thread using the engine and nothing new is allocated per image.
+    private ConcurrentLinkedQueue<MLAAContext> idleContexts = new ConcurrentLinkedQueue<MLAAContext>();
+
+    // told about every image when set; nothing is measured while it is null and the flight
+    // recorder event is off
+    private volatile MLAAMetrics.Listener listener;
+
+    /*
+     * @param strength same meaning as the strength in AlgorithmMLAA
+     */
+    protected MLAAEngine(int strength) {
+        this(strength, new BlendWeights());
+    }
+
+    /*
+     * @param weights how much each pixel of a pattern is blended; the table is shared by every
+     * thread using the engine
+     */
+    protected MLAAEngine(int strength, BlendWeights weights) {
+        this(MLAAOptions.DEFAULT.withStrength(strength), weights);
+    }
+
+    /*
+     * @param options what calls that don't bring options of their own are done with
+     */
+    protected MLAAEngine(MLAAOptions options, BlendWeights weights) {
+
+        this.options = options;
+        detectors.put(options.detectionOptions(), new FusedPatternDetector(options.detectionOptions()));
+        for (MLAAOptions.Alpha alpha : MLAAOptions.Alpha.values()) {
+            blenders.put(alpha, new PatternBlender(weights, alpha));
+        }
+    }
+
+    /*
+     * Searches for all 8 "L" patterns and blends the image accordingly. Nothing is kept from one
+     * call to the next, so the engine can be shared between threads and called any number of
+     * times with images of any size.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image) {
+        return algorithm(image, options, null);
+    }
+
+    /*
+     * Same as above, but the image is searched and blended in parallel on the pool when one is
+     * given. The result is identical either way.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image, ForkJoinPool pool) {
+        return algorithm(image, options, pool);
+    }
+
+    /*
+     * Same as algorithm(image), but with options for just this call. Whatever the options need
+     * set up is kept for the next call with equal options, so tuning every call costs nothing
+     * after the first.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image, MLAAOptions options) {
+        return algorithm(image, options, null);
+    }
+
+    /*
+     * Same as above, but the image is searched and blended in parallel on the pool when one is
+     * given
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image, MLAAOptions options, ForkJoinPool pool) {
+
+        MLAAContext context = takeContext();
+        try {
+            run(new PixelRaster(image, context.getPixels(image.getWidth() * image.getHeight())), context, options,
+                    pool);
+        } finally {
+            idleContexts.offer(context);
+        }
+
+        return image;
+    }
+
+    /*
+     * Searches for all 8 "L" patterns and blends a raw frame in place. The luminance is worked
+     * out and blended pixels are read and written straight in the frame's buffer, so there is no
+     * image to decode or encode and no copy of the pixels on the heap.
+     *
+     * @return frame, with MLAA
+     */
+    protected RawFrame algorithm(RawFrame frame) {
+        return algorithm(frame, null);
+    }
+
+    /*
+     * Same as above, but the frame is searched and blended in parallel on the pool when one is
+     * given
+     *
+     * @return frame, with MLAA
+     */
+    protected RawFrame algorithm(RawFrame frame, ForkJoinPool pool) {
+        return algorithm(frame, options, pool);
+    }
+
+    /*
+     * Same as above, with options for just this call
+     *
+     * @return frame, with MLAA
+     */
+    protected RawFrame algorithm(RawFrame frame, MLAAOptions options, ForkJoinPool pool) {
+
+        MLAAContext context = takeContext();
+        try {
+            run(new PixelRaster(frame), context, options, pool);
+        } finally {
+            idleContexts.offer(context);
+        }
+
+        return frame;
+    }
+
+    /*
+     * Finds all 8 "L" patterns without blending anything. The map can be blended into the image
+     * later, as often as needed and by engines with other weights.
+     *
+     * @return the patterns found in the image
+     */
+    protected EdgeMap detect(BufferedImage image) {
+        return detect(image, null);
+    }
+
+    /*
+     * Same as above, but the image is searched in parallel on the pool when one is given
+     *
+     * @return the patterns found in the image
+     */
+    protected EdgeMap detect(BufferedImage image, ForkJoinPool pool) {
+        return detect(image, options, pool);
+    }
+
+    /*
+     * Same as above, but the patterns are found the way the options say
+     *
+     * @return the patterns found in the image
+     */
+    protected EdgeMap detect(BufferedImage image, MLAAOptions options, ForkJoinPool pool) {
+
+        MLAAContext context = takeContext();
+        try {
+            PixelRaster raster = new PixelRaster(image, context.getPixels(image.getWidth() * image.getHeight()));
+            FusedPatternDetector detector = getDetector(options);
+            return EdgeMap.fromMasks(detector.detect(raster, context.getLuminance(), context.getMasks(), pool),
+                    options.detectionOptions());
+        } finally {
+            idleContexts.offer(context);
+        }
+    }
+
+    /*
+     * Blends the image according to patterns found earlier. Blending the map detect returned for
+     * an image gives exactly what algorithm() does.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage blend(BufferedImage image, EdgeMap map) {
+        return blend(image, map, null);
+    }
+
+    /*
+     * Same as above, but the image is blended in parallel on the pool when one is given
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage blend(BufferedImage image, EdgeMap map, ForkJoinPool pool) {
+        return blend(image, map, options, pool);
+    }
+
+    /*
+     * Same as above, with the alpha of blended pixels handled the way the options say; the rest
+     * of the options was used when the map was detected
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage blend(BufferedImage image, EdgeMap map, MLAAOptions options, ForkJoinPool pool) {
+
+        if (map.getWidth() != image.getWidth() || map.getHeight() != image.getHeight()) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "edge map is %dx%d but the image is %dx%d",
+                    map.getWidth(), map.getHeight(), image.getWidth(), image.getHeight()));
+        }
+        MLAAContext context = takeContext();
+        try {
+            PixelRaster raster = new PixelRaster(image, context.getPixels(image.getWidth() * image.getHeight()));
+            blend(raster, map.toMasks(context.getMasks()), options, context, pool, null);
+        } finally {
+            idleContexts.offer(context);
+        }
+
+        return image;
+    }
+
+    /*
+     * Sets the listener told how every image went from now on, or turns metrics off with null.
+     * Images done by algorithm() are measured while a listener is set or the MLAAEvent flight
+     * recorder event is enabled.
+     */
+    protected void setMetricsListener(MLAAMetrics.Listener listener) {
+        this.listener = listener;
+    }
+
+    /*
+     * @return strength patterns are found with
+     */
+    protected int getStrength() {
+        return options.getStrength();
+    }
+
+    /*
+     * @return options calls without options of their own are done with
+     */
+    protected MLAAOptions getOptions() {
+        return options;
+    }
+
+    /*
+     * @return detector set up for the options, made once per value of their detection options;
+     * alpha and blend don't change what is detected, so they don't get detectors of their own
+     */
+    private FusedPatternDetector getDetector(MLAAOptions options) {
+
+        MLAAOptions detection = options.detectionOptions();
+        FusedPatternDetector detector = detectors.get(detection);
+        if (detector == null) {
+            detector = new FusedPatternDetector(detection);
+            if (detectors.size() < MAXIMUM_CACHED_OPTIONS) {
+                FusedPatternDetector other = detectors.putIfAbsent(detection, detector);
+                if (other != null) {
+                    detector = other;
+                }
+            }
+        }
+        return detector;
+    }
+
+    /*
+     * @return scratch buffers no other call is using
+     */
+    private MLAAContext takeContext() {
+
+        MLAAContext context = idleContexts.poll();
+        if (context == null) {
+            context = new MLAAContext();
+        }
+        return context;
+    }
+
+    private void run(PixelRaster raster, MLAAContext context, MLAAOptions options, ForkJoinPool pool) {
+
+        FusedPatternDetector detector = getDetector(options);
+        MLAAMetrics.Listener listener = this.listener;
+        MLAAEvent event = new MLAAEvent();
+        if (listener == null && !event.isEnabled()) {
+            blend(raster, detector.detect(raster, context.getLuminance(), context.getMasks(), pool), options, context,
+                    pool, null);
+            return;
+        }
+
+        event.begin();
+        MLAAMetrics metrics = new MLAAMetrics(raster.getWidth(), raster.getHeight(), pool != null);
+        long allocated = MLAAMetrics.allocatedBytes();
+        long start = System.nanoTime();
+        PatternMasks masks = detector.detect(raster, context.getLuminance(), context.getMasks(), pool, metrics);
+        blend(raster, masks, options, context, pool, metrics);
+        metrics.finish(masks, blenders.get(options.getAlpha()).getWeights(), System.nanoTime() - start, allocated);
+
+        if (event.shouldCommit()) {
+            event.set(metrics);
+            event.commit();
+        }
+        if (listener != null) {
+            listener.imageDone(metrics);
+        }
+    }
+
+    private void blend(PixelRaster raster, PatternMasks masks, MLAAOptions options, MLAAContext context,
+            ForkJoinPool pool, MLAAMetrics metrics) {
+
+        PatternBlender blender = blenders.get(options.getAlpha());
+        // converted rasters write through setRGB, which can't be called from several threads
+        if (raster.isConverted()) {
+            pool = null;
+        }
+        if (options.getBlend() == MLAAOptions.Blend.ACCUMULATE) {
+            blender.accumulate(raster, masks, context.getDeltas(raster.getWidth() * raster.getHeight()), pool,
+                    metrics);
+        } else if (pool == null) {
+            blender.blend(raster, masks, metrics);
+        } else {
+            blender.blend(raster, masks, pool, metrics);
+        }
+    }
+}
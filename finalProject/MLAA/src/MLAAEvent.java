@@ -0,0 +1,73 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Flight recorder event for every image an engine finishes, with the same numbers as
+ * MLAAMetrics. Nothing is measured unless the event is enabled in the recording, e.g.
+ *
+ *     java -XX:StartFlightRecording:filename=mlaa.jfr,settings=profile ...
+ */
+@Name("mlaa.Image")
+@Label("MLAA Image")
+@Category("MLAA")
+@Description("One image searched and blended by MLAA")
+public class MLAAEvent extends jdk.jfr.Event {
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    @Label("Edge Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long edgeDuration;
+
+    @Label("Start Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long startDuration;
+
+    @Label("Length Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long lengthDuration;
+
+    @Label("Blend Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long blendDuration;
+
+    @Label("Runs")
+    long runs;
+
+    @Label("Pixels Blended")
+    long pixelsBlended;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    /*
+     * Copies the numbers of an image into the event
+     */
+    protected void set(MLAAMetrics metrics) {
+
+        width = metrics.getWidth();
+        height = metrics.getHeight();
+        parallel = metrics.isParallel();
+        edgeDuration = metrics.getEdgeNanos();
+        startDuration = metrics.getStartNanos();
+        lengthDuration = metrics.getLengthNanos();
+        blendDuration = metrics.getBlendNanos();
+        for (int i = 0; i < 8; i++) {
+            runs += metrics.getRuns(i);
+        }
+        pixelsBlended = metrics.getPixelsBlended();
+        allocated = metrics.getAllocatedBytes();
+    }
+}
@@ -0,0 +1,252 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+public class MLAAMetrics {
+
+    /*
+     * Told about every image an engine finishes once it is set (see MLAAEngine.setMetricsListener)
+     */
+    protected interface Listener {
+
+        /*
+         * Called on the thread that ran the image, right after it is done. The metrics belong to
+         * the listener from then on.
+         */
+        void imageDone(MLAAMetrics metrics);
+    }
+
+    // runs are counted in buckets of lengths 1, 2 to 3, 4 to 7, and so on; the last bucket holds
+    // every run at least 2^(HISTOGRAM_BUCKETS - 1) long
+    protected static final int HISTOGRAM_BUCKETS = 16;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private int width;
+    private int height;
+    private boolean parallel;
+
+    // detection, phase by phase: luminance and edge bits, marking where patterns start, and
+    // following each one to its end
+    private long edgeNanos;
+    private long startNanos;
+    private long lengthNanos;
+    private long[] blendNanos = new long[8];
+    private long totalNanos;
+
+    private int[] runs = new int[8];
+    private long[][] histogram = new long[8][HISTOGRAM_BUCKETS];
+    private long pixelsBlended;
+    private long allocatedBytes = -1;
+
+    protected MLAAMetrics(int width, int height, boolean parallel) {
+        this.width = width;
+        this.height = height;
+        this.parallel = parallel;
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * @return true if the image was searched and blended on a pool
+     */
+    protected boolean isParallel() {
+        return parallel;
+    }
+
+    /*
+     * @return time spent working out the luminance and edge bits of every pixel
+     */
+    protected long getEdgeNanos() {
+        return edgeNanos;
+    }
+
+    /*
+     * @return time spent marking where each of the 8 patterns starts; all 8 are marked in one
+     * sweep, which replaces the searches locatingPattern1 through locatingPattern8 do
+     */
+    protected long getStartNanos() {
+        return startNanos;
+    }
+
+    /*
+     * @return time spent following every pattern to its end
+     */
+    protected long getLengthNanos() {
+        return lengthNanos;
+    }
+
+    protected long getDetectNanos() {
+        return edgeNanos + startNanos + lengthNanos;
+    }
+
+    /*
+     * On a pool, patterns 1 and 2, 3 and 4, and so on are blended together and timed as one;
+     * the time goes to the first of the two and the second gets 0. Accumulated patterns (see
+     * MLAAOptions.Blend) are all timed as pattern 1.
+     *
+     * @return time spent blending pattern i
+     */
+    protected long getBlendNanos(int i) {
+        return blendNanos[i];
+    }
+
+    /*
+     * @return time spent blending, the same as writingPatterns
+     */
+    protected long getBlendNanos() {
+
+        long sum = 0;
+        for (long nanos : blendNanos) {
+            sum += nanos;
+        }
+        return sum;
+    }
+
+    /*
+     * @return time from the start of detection to the end of blending
+     */
+    protected long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /*
+     * @return number of runs found for pattern i
+     */
+    protected int getRuns(int i) {
+        return runs[i];
+    }
+
+    /*
+     * @return number of runs of pattern i in each length bucket (see HISTOGRAM_BUCKETS)
+     */
+    protected long[] getHistogram(int i) {
+        return histogram[i].clone();
+    }
+
+    /*
+     * @return number of pixel blends done; a pixel blended by several patterns counts once for
+     * each
+     */
+    protected long getPixelsBlended() {
+        return pixelsBlended;
+    }
+
+    /*
+     * Only the thread that called the engine is counted, so work done on a pool isn't included.
+     *
+     * @return bytes allocated while the image was done, or -1 if the JVM can't tell
+     */
+    protected long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    protected void setEdgeNanos(long nanos) {
+        edgeNanos = nanos;
+    }
+
+    protected void setStartNanos(long nanos) {
+        startNanos = nanos;
+    }
+
+    protected void setLengthNanos(long nanos) {
+        lengthNanos = nanos;
+    }
+
+    protected void setBlendNanos(int i, long nanos) {
+        blendNanos[i] = nanos;
+    }
+
+    /*
+     * Counts the runs in the masks and the pixels they blend, and records the totals
+     *
+     * @param allocatedBefore what allocatedBytes() returned before the image was started
+     */
+    protected void finish(PatternMasks masks, BlendWeights weights, long totalNanos, long allocatedBefore) {
+
+        this.totalNanos = totalNanos;
+        long allocated = allocatedBytes();
+        this.allocatedBytes = allocatedBefore < 0 || allocated < 0 ? -1 : allocated - allocatedBefore;
+
+        for (int i = 0; i < 8; i++) {
+            runs[i] = masks.countPatterns(i);
+            for (int n = 0; n < runs[i]; n++) {
+                int length = masks.getRunLength(i, n);
+                histogram[i][Math.min(HISTOGRAM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(length))]++;
+                pixelsBlended += weights.getWeights(length).length;
+            }
+        }
+    }
+
+    /*
+     * @return bytes the current thread has allocated so far, or -1 if the JVM can't tell
+     */
+    protected static long allocatedBytes() {
+
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Runs MLAA over images with a listener and prints where the time went for each one, and how
+     * long the runs it found were.
+     *
+     * Usage: java MLAAMetrics <image>...
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println("Usage: java MLAAMetrics <image>...");
+            System.exit(1);
+        }
+        MLAAEngine engine = new MLAAEngine(50);
+        engine.setMetricsListener(metrics -> {
+            long runs = 0;
+            long[] histogram = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < 8; i++) {
+                runs += metrics.getRuns(i);
+                long[] counts = metrics.getHistogram(i);
+                for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+                    histogram[b] += counts[b];
+                }
+            }
+            System.out.println(String.format(Locale.ROOT,
+                    "%dx%d: edges %.2f ms, starts %.2f ms, lengths %.2f ms, blend %.2f ms, total %.2f ms, "
+                            + "%d runs, %d pixels blended, %d bytes allocated",
+                    metrics.getWidth(), metrics.getHeight(), metrics.getEdgeNanos() / 1e6,
+                    metrics.getStartNanos() / 1e6, metrics.getLengthNanos() / 1e6, metrics.getBlendNanos() / 1e6,
+                    metrics.getTotalNanos() / 1e6, runs, metrics.getPixelsBlended(), metrics.getAllocatedBytes()));
+            StringBuilder line = new StringBuilder("  run lengths:");
+            for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+                if (histogram[b] > 0) {
+                    line.append(String.format(Locale.ROOT, " %d+: %d", 1 << b, histogram[b]));
+                }
+            }
+            System.out.println(line);
+        });
+
+        for (String name : args) {
+            BufferedImage image = ImageIO.read(new File(name));
+            if (image == null) {
+                System.err.println("can't read " + name);
+                continue;
+            }
+            System.out.print(name + " ");
+            engine.algorithm(image);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.util.Locale;
+
+public class MLAAOptions {
+
+    /*
+     * What a blended pixel's alpha becomes
+     */
+    protected enum Alpha {
+        // opaque, like the new Color(red, green, blue) AlgorithmMLAA has always written
+        OPAQUE,
+        // the pixel keeps its own alpha
+        KEEP,
+        // alpha is blended with the neighbour's like red, green and blue
+        BLEND
+    }
+
+    /*
+     * How the blends of different patterns are combined
+     */
+    protected enum Blend {
+        // pattern after pattern, in place, each reading what the ones before it wrote; exactly
+        // what AlgorithmMLAA does
+        SEQUENTIAL,
+        // every pattern reads the image as it was before blending, and the change each blend
+        // makes (weight times the difference to the neighbour, rounded) is added up per pixel
+        // and clamped to 0 to 255. The order doesn't matter, so all 8 patterns are blended at
+        // once and the result is the same however the work is split. Pixels blended more than
+        // once move further than SEQUENTIAL moves them.
+        ACCUMULATE
+    }
+
+    // every one of the 8 patterns
+    protected static final int ALL_PATTERNS = 0xFF;
+
+    // what AlgorithmMLAA has always done
+    protected static final MLAAOptions DEFAULT = new MLAAOptions(50, 0, LumaPlane.RED_WEIGHT, LumaPlane.GREEN_WEIGHT,
+            LumaPlane.BLUE_WEIGHT, ALL_PATTERNS, Alpha.OPAQUE, Blend.SEQUENTIAL);
+
+    private int strength;
+    private int maximumRunLength;
+    private int redWeight;
+    private int greenWeight;
+    private int blueWeight;
+    private int patterns;
+    private Alpha alpha;
+    private Blend blend;
+
+    private MLAAOptions(int strength, int maximumRunLength, int redWeight, int greenWeight, int blueWeight,
+            int patterns, Alpha alpha, Blend blend) {
+        this.strength = strength;
+        this.maximumRunLength = maximumRunLength;
+        this.redWeight = redWeight;
+        this.greenWeight = greenWeight;
+        this.blueWeight = blueWeight;
+        this.patterns = patterns;
+        this.alpha = alpha;
+        this.blend = blend;
+    }
+
+    /*
+     * @param strength how far apart two luminances have to be to make an edge, between 1 and 254
+     * @return these options with another strength
+     */
+    protected MLAAOptions withStrength(int strength) {
+
+        if (strength < 1 || strength > 254) {
+            throw new IllegalArgumentException("strength must be between 1 and 254, not " + strength);
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * @param maximumRunLength longest a pattern is followed before it is cut off, or 0 to follow
+     * every pattern to its end
+     * @return these options with another maximum run length
+     */
+    protected MLAAOptions withMaximumRunLength(int maximumRunLength) {
+
+        if (maximumRunLength < 0) {
+            throw new IllegalArgumentException("maximum run length can't be negative");
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * Luminance is worked out as red * redWeight + green * greenWeight + blue * blueWeight, in
+     * parts of LumaPlane.SCALE, and two pixels make an edge when their luminances are more than
+     * strength * LumaPlane.SCALE apart. With weights other than the default ones the comparison
+     * is done exactly in integers; with the default ones it matches AlgorithmMLAA's doubles.
+     *
+     * @return these options with other luminance weights
+     */
+    protected MLAAOptions withLumaWeights(int redWeight, int greenWeight, int blueWeight) {
+
+        if (redWeight < 0 || greenWeight < 0 || blueWeight < 0
+                || redWeight + greenWeight + blueWeight > LumaPlane.SCALE) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                    "luma weights must not be negative and add up to at most %d", LumaPlane.SCALE));
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * @param patterns one bit for each pattern to find and blend, bit 0 for pattern 1 up to bit 7
+     * for pattern 8 (see AlgorithmMLAA)
+     * @return these options with other patterns
+     */
+    protected MLAAOptions withPatterns(int patterns) {
+
+        if ((patterns & ~ALL_PATTERNS) != 0) {
+            throw new IllegalArgumentException("there are only 8 patterns");
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * @return these options with another way of handling alpha
+     */
+    protected MLAAOptions withAlpha(Alpha alpha) {
+
+        if (alpha == null) {
+            throw new IllegalArgumentException("alpha can't be null");
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * @return these options with another way of combining the blends of different patterns
+     */
+    protected MLAAOptions withBlend(Blend blend) {
+
+        if (blend == null) {
+            throw new IllegalArgumentException("blend can't be null");
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha,
+                blend);
+    }
+
+    /*
+     * Sets one option by the name a request or a command line uses for it: strength,
+     * maximumRunLength, patterns (e.g. 0xFF), alpha (opaque, keep or blend) or blend (sequential
+     * or accumulate)
+     *
+     * @return these options with the named one set
+     */
+    protected MLAAOptions withParameter(String name, String value) {
+
+        switch (name) {
+        case "strength":
+            return withStrength(Integer.parseInt(value));
+        case "maximumRunLength":
+            return withMaximumRunLength(Integer.parseInt(value));
+        case "patterns":
+            return withPatterns(Integer.decode(value));
+        case "alpha":
+            return withAlpha(Alpha.valueOf(value.toUpperCase(Locale.ROOT)));
+        case "blend":
+            return withBlend(Blend.valueOf(value.toUpperCase(Locale.ROOT)));
+        default:
+            throw new IllegalArgumentException("unknown option " + name);
+        }
+    }
+
+    protected int getStrength() {
+        return strength;
+    }
+
+    /*
+     * @return longest a pattern is followed, or 0 for no limit
+     */
+    protected int getMaximumRunLength() {
+        return maximumRunLength;
+    }
+
+    protected int getRedWeight() {
+        return redWeight;
+    }
+
+    protected int getGreenWeight() {
+        return greenWeight;
+    }
+
+    protected int getBlueWeight() {
+        return blueWeight;
+    }
+
+    /*
+     * @return true if luminance is worked out with the weights AlgorithmMLAA uses
+     */
+    protected boolean hasDefaultLumaWeights() {
+        return redWeight == LumaPlane.RED_WEIGHT && greenWeight == LumaPlane.GREEN_WEIGHT
+                && blueWeight == LumaPlane.BLUE_WEIGHT;
+    }
+
+    /*
+     * Builds the table EdgeKernel looks luminance up in: the red, green and blue weights times
+     * every channel value, 256 entries each. This is the one thing about the options that costs
+     * something to set up, so MLAAEngine keeps it for every options value it sees.
+     *
+     * @return new luminance table, or null for the default weights, which EdgeKernel handles
+     * without one
+     */
+    protected int[] lumaTable() {
+
+        if (hasDefaultLumaWeights()) {
+            return null;
+        }
+        int[] table = new int[3 * 256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = redWeight * value;
+            table[256 + value] = greenWeight * value;
+            table[512 + value] = blueWeight * value;
+        }
+        return table;
+    }
+
+    /*
+     * @return these options with alpha and blend at their defaults; the rest is all that decides
+     * which patterns are found, so detections with options that are equal after this are the same
+     */
+    protected MLAAOptions detectionOptions() {
+
+        if (alpha == DEFAULT.alpha && blend == DEFAULT.blend) {
+            return this;
+        }
+        return new MLAAOptions(strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns,
+                DEFAULT.alpha, DEFAULT.blend);
+    }
+
+    /*
+     * Unlike hashCode, this is the same in every JVM, so it can name files that outlive the
+     * process
+     *
+     * @return 64 bit hash of the options mixed into seed
+     */
+    protected long hash(long seed) {
+
+        int[] values = { strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha.ordinal(),
+                blend.ordinal() };
+        return ContentHash.xxHash64(values, values.length, -1, seed);
+    }
+
+    /*
+     * @return true if pattern i (0 to 7) is found and blended
+     */
+    protected boolean isPatternEnabled(int i) {
+        return (patterns & (1 << i)) != 0;
+    }
+
+    protected int getPatterns() {
+        return patterns;
+    }
+
+    protected Alpha getAlpha() {
+        return alpha;
+    }
+
+    protected Blend getBlend() {
+        return blend;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+
+        if (!(other instanceof MLAAOptions)) {
+            return false;
+        }
+        MLAAOptions options = (MLAAOptions) other;
+        return options.strength == strength && options.maximumRunLength == maximumRunLength
+                && options.redWeight == redWeight && options.greenWeight == greenWeight
+                && options.blueWeight == blueWeight && options.patterns == patterns && options.alpha == alpha
+                && options.blend == blend;
+    }
+
+    @Override
+    public int hashCode() {
+
+        // looked up on every call with options, so nothing is boxed
+        int hash = strength;
+        hash = 31 * hash + maximumRunLength;
+        hash = 31 * hash + redWeight;
+        hash = 31 * hash + greenWeight;
+        hash = 31 * hash + blueWeight;
+        hash = 31 * hash + patterns;
+        hash = 31 * hash + alpha.ordinal();
+        return 31 * hash + blend.ordinal();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "strength %d, maximum run length %d, luma weights %d/%d/%d, patterns %02x, alpha %s, blend %s",
+                strength, maximumRunLength, redWeight, greenWeight, blueWeight, patterns, alpha, blend);
+    }
+}
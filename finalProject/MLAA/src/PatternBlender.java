@@ -0,0 +1,368 @@
+import java.util.concurrent.ForkJoinPool;
+
+public class PatternBlender {
+
+    // how much each pixel of a pattern is blended, by pattern length
+    private BlendWeights weights;
+    private MLAAOptions.Alpha alpha;
+
+    protected PatternBlender() {
+        this(new BlendWeights());
+    }
+
+    protected PatternBlender(BlendWeights weights) {
+        this(weights, MLAAOptions.Alpha.OPAQUE);
+    }
+
+    /*
+     * @param alpha what the alpha of blended pixels becomes
+     */
+    protected PatternBlender(BlendWeights weights, MLAAOptions.Alpha alpha) {
+        this.weights = weights;
+        this.alpha = alpha;
+    }
+
+    protected BlendWeights getWeights() {
+        return weights;
+    }
+
+    /*
+     * Blends pixels in regard to all eight "L" patterns found. Works exactly like
+     * AlgorithmMLAA.writingPatterns, except the pixels are read from and written to the raster
+     * instead of going through getRGB and setRGB.
+     */
+    protected void blend(PixelRaster raster, PatternMasks masks) {
+        blend(raster, masks, (MLAAMetrics) null);
+    }
+
+    /*
+     * Same as above, and when metrics are given, times each pattern into them
+     */
+    protected void blend(PixelRaster raster, PatternMasks masks, MLAAMetrics metrics) {
+
+        for (int i = 0; i < 8; i++) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            int length = isVertical(i) ? raster.getHeight() : raster.getWidth();
+            blendStrip(raster, masks, i, 0, length, length);
+            if (metrics != null) {
+                metrics.setBlendNanos(i, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /*
+     * Same as above, but splits the work into strips that are blended in parallel on the pool.
+     *
+     * Patterns are blended in place, so a pattern may read pixels an earlier pattern already
+     * blended and the order matters. The vertical patterns (1, 2, 5 and 6) only ever read and write
+     * pixels in the same row, and the horizontal patterns (3, 4, 7 and 8) only ever read and write
+     * pixels in the same column. So the vertical patterns are blended in strips of rows and the
+     * horizontal patterns in strips of columns; within a strip the patterns are visited in the
+     * same order as blend above, which gives exactly the same image.
+     */
+    protected void blend(PixelRaster raster, PatternMasks masks, ForkJoinPool pool) {
+        blend(raster, masks, pool, null);
+    }
+
+    /*
+     * Same as above, and when metrics are given, times each pair of patterns into them
+     */
+    protected void blend(PixelRaster raster, PatternMasks masks, ForkJoinPool pool, MLAAMetrics metrics) {
+
+        // patterns 1 and 2, 3 and 4, 5 and 6, and 7 and 8 go the same way, so each pair can be
+        // blended in one go
+        for (int i = 0; i < 8; i += 2) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            int first = i;
+            int length = isVertical(i) ? raster.getHeight() : raster.getWidth();
+            StripTask.run(pool, length, (from, to) -> {
+                for (int j = first; j < first + 2; j++) {
+                    // half of a pattern is blended, so a pattern can reach this far into a strip
+                    int reach = (masks.getLongestPattern(j) + 1) / 2;
+                    blendStrip(raster, masks, j, from, to, reach);
+                }
+            });
+            if (metrics != null) {
+                metrics.setBlendNanos(i, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /*
+     * Blends pattern i, but only the pixels in the rows (vertical patterns) or columns (horizontal
+     * patterns) from (inclusive) to (exclusive). Patterns starting up to reach pixels outside the
+     * strip are followed into it.
+     */
+    private void blendStrip(PixelRaster raster, PatternMasks masks, int i, int from, int to, int reach) {
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+
+        // which neighbour we blend towards, and which way we walk along the pattern
+        int compareOffset = compareOffset(i, width);
+        int direction = direction(i);
+        int stepOffset = isVertical(i) ? direction * width : direction;
+
+        // first and last row or column a pattern reaching into the strip can start at
+        int firstStart = direction > 0 ? Math.max(0, from - reach + 1) : from;
+        int lastStart = direction > 0 ? to : Math.min(isVertical(i) ? height : width, to + reach - 1);
+
+        // visit the runs column by column, top to bottom, just like writingPatterns; the runs are
+        // kept in that order, so only pixels patterns start at are ever looked at
+        if (isVertical(i)) {
+            // within a column the runs go top to bottom, so the ones starting in the rows the
+            // strip needs are counted out of the masks instead of searched for
+            for (int x = 0; x < width; x++) {
+                int lastRun = masks.firstRun(i, x, lastStart);
+                for (int n = masks.firstRun(i, x, firstStart); n < lastRun; n++) {
+                    int y = masks.getRunStart(i, n) - x * height;
+                    blendPattern(raster, masks.getRunLength(i, n), y * width + x, compareOffset, stepOffset, y,
+                            direction, from, to);
+                }
+            }
+        } else {
+            int lastRun = masks.firstRun(i, lastStart);
+            for (int n = masks.firstRun(i, firstStart); n < lastRun; n++) {
+                int start = masks.getRunStart(i, n);
+                int x = start / height;
+                blendPattern(raster, masks.getRunLength(i, n), (start % height) * width + x, compareOffset,
+                        stepOffset, x, direction, from, to);
+            }
+        }
+    }
+
+    /*
+     * Blends the first half of a single pattern, starting at index. position is the row (vertical
+     * patterns) or column (horizontal patterns) of index; only pixels whose row or column lies
+     * between from (inclusive) and to (exclusive) are written.
+     */
+    private void blendPattern(PixelRaster raster, int patternLength, int index, int compareOffset,
+            int stepOffset, int position, int direction, int from, int to) {
+
+        double[] patternWeights = weights.getWeights(patternLength);
+
+        // skip straight to the pixels inside the strip
+        int firstStep;
+        int lastStep;
+        if (direction > 0) {
+            firstStep = Math.max(0, from - position);
+            lastStep = Math.min(patternWeights.length, to - position);
+        } else {
+            firstStep = Math.max(0, position - to + 1);
+            lastStep = Math.min(patternWeights.length, position - from + 1);
+        }
+
+        index += firstStep * stepOffset;
+        for (int step = firstStep; step < lastStep; step++) {
+            double a = patternWeights[step];
+            double b = 1.0 - a;
+
+            int currentPixel = raster.get(index);
+            int comparePixel = raster.get(index + compareOffset);
+
+            int red = (int) Math.round((b * ((currentPixel >> 16) & 0xFF)) + (a * ((comparePixel >> 16) & 0xFF)));
+            int green = (int) Math.round((b * ((currentPixel >> 8) & 0xFF)) + (a * ((comparePixel >> 8) & 0xFF)));
+            int blue = (int) Math.round((b * (currentPixel & 0xFF)) + (a * (comparePixel & 0xFF)));
+
+            // by default blended pixels are opaque, just like a new Color(red, green, blue)
+            int alphaBits;
+            if (alpha == MLAAOptions.Alpha.OPAQUE) {
+                alphaBits = 0xFF000000;
+            } else if (alpha == MLAAOptions.Alpha.KEEP) {
+                alphaBits = currentPixel & 0xFF000000;
+            } else {
+                alphaBits = (int) Math.round((b * (currentPixel >>> 24)) + (a * (comparePixel >>> 24))) << 24;
+            }
+            raster.set(index, alphaBits | (red << 16) | (green << 8) | blue);
+
+            index += stepOffset;
+        }
+    }
+
+    /*
+     * Blends all 8 patterns out of place: every pattern reads the pixels as they were before
+     * blending, and the change each blend would make is added up per pixel in deltas instead of
+     * being written. Only once every pattern is done are the changes written to the raster (see
+     * MLAAOptions.Blend.ACCUMULATE).
+     *
+     * The changes are whole numbers, so adding them up in any order gives the same image. With a
+     * pool, the image is split into bands of rows, and every band does all 8 patterns for its own
+     * pixels at once without waiting on the others or taking any lock.
+     *
+     * @param deltas at least width * height entries, all 0; they are all 0 again once this returns
+     */
+    protected void accumulate(PixelRaster raster, PatternMasks masks, long[] deltas, ForkJoinPool pool,
+            MLAAMetrics metrics) {
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        int height = raster.getHeight();
+        if (pool == null) {
+            accumulateBand(raster, masks, deltas, 0, height, false);
+            accumulateBand(raster, masks, deltas, 0, height, true);
+        } else {
+            StripTask.run(pool, height, (from, to) -> accumulateBand(raster, masks, deltas, from, to, false));
+            StripTask.run(pool, height, (from, to) -> accumulateBand(raster, masks, deltas, from, to, true));
+        }
+        if (metrics != null) {
+            // the patterns are blended together, so all the time goes to the first one
+            metrics.setBlendNanos(0, System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * Goes through every pixel in the rows from (inclusive) to (exclusive) that some pattern
+     * blends, and either adds up the changes the patterns make to it or, once that has been done
+     * for every row, writes them
+     */
+    private void accumulateBand(PixelRaster raster, PatternMasks masks, long[] deltas, int from, int to,
+            boolean write) {
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+
+        for (int i = 0; i < 8; i++) {
+            int compareOffset = compareOffset(i, width);
+            int direction = direction(i);
+            // vertical patterns can reach into the band from rows above or below it, horizontal
+            // patterns stay in the row they start in
+            int firstStart = from;
+            int lastStart = to;
+            if (isVertical(i)) {
+                int reach = (masks.getLongestPattern(i) + 1) / 2;
+                firstStart = direction > 0 ? Math.max(0, from - reach + 1) : from;
+                lastStart = direction > 0 ? to : Math.min(height, to + reach - 1);
+            }
+            // only the runs starting in those rows are visited, column by column (see blendStrip)
+            for (int x = 0; x < width; x++) {
+                int lastRun = masks.firstRun(i, x, lastStart);
+                for (int n = masks.firstRun(i, x, firstStart); n < lastRun; n++) {
+                    int y = masks.getRunStart(i, n) - x * height;
+                    if (isVertical(i)) {
+                        accumulatePattern(raster, deltas, masks.getRunLength(i, n), y * width + x, compareOffset,
+                                direction * width, y, direction, from, to, write);
+                    } else {
+                        accumulatePattern(raster, deltas, masks.getRunLength(i, n), y * width + x, compareOffset,
+                                direction, x, direction, 0, width, write);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Same as blendPattern, but adds the changes to deltas, or writes them when write is set
+     */
+    private void accumulatePattern(PixelRaster raster, long[] deltas, int patternLength, int index,
+            int compareOffset, int stepOffset, int position, int direction, int from, int to, boolean write) {
+
+        double[] patternWeights = weights.getWeights(patternLength);
+
+        int firstStep;
+        int lastStep;
+        if (direction > 0) {
+            firstStep = Math.max(0, from - position);
+            lastStep = Math.min(patternWeights.length, to - position);
+        } else {
+            firstStep = Math.max(0, position - to + 1);
+            lastStep = Math.min(patternWeights.length, position - from + 1);
+        }
+
+        index += firstStep * stepOffset;
+        for (int step = firstStep; step < lastStep; step++) {
+            if (write) {
+                writeDelta(raster, deltas, index);
+            } else {
+                double a = patternWeights[step];
+                int currentPixel = raster.get(index);
+                int comparePixel = raster.get(index + compareOffset);
+
+                // the alpha lane marks the pixel as blended, so it is made opaque even when its
+                // colour doesn't change
+                long alphaChange;
+                if (alpha == MLAAOptions.Alpha.OPAQUE) {
+                    alphaChange = 1;
+                } else if (alpha == MLAAOptions.Alpha.KEEP) {
+                    alphaChange = 0;
+                } else {
+                    alphaChange = change(a, currentPixel, comparePixel, 24);
+                }
+                // four signed 16 bit lanes; adding them up as one long gives the sum of every lane
+                // as long as none overflows, which 8 patterns of at most 255 each can't
+                deltas[index] += (alphaChange << 48) + (change(a, currentPixel, comparePixel, 16) << 32)
+                        + (change(a, currentPixel, comparePixel, 8) << 16) + change(a, currentPixel, comparePixel, 0);
+            }
+            index += stepOffset;
+        }
+    }
+
+    /*
+     * @return change blending the channel at shift a of the way towards the compare pixel makes
+     */
+    private static long change(double a, int currentPixel, int comparePixel, int shift) {
+        return Math.round(a * (((comparePixel >>> shift) & 0xFF) - ((currentPixel >>> shift) & 0xFF)));
+    }
+
+    /*
+     * Writes the changes added up for the pixel at index, if it has any, and clears them
+     */
+    private void writeDelta(PixelRaster raster, long[] deltas, int index) {
+
+        long delta = deltas[index];
+        if (delta == 0) {
+            return;
+        }
+        deltas[index] = 0;
+
+        int blue = (short) delta;
+        delta = (delta - blue) >> 16;
+        int green = (short) delta;
+        delta = (delta - green) >> 16;
+        int red = (short) delta;
+        int alphaChange = (int) ((delta - red) >> 16);
+
+        int pixel = raster.get(index);
+        int alphaBits;
+        if (alpha == MLAAOptions.Alpha.OPAQUE) {
+            alphaBits = 0xFF000000;
+        } else if (alpha == MLAAOptions.Alpha.KEEP) {
+            alphaBits = pixel & 0xFF000000;
+        } else {
+            alphaBits = clamp((pixel >>> 24) + alphaChange) << 24;
+        }
+        raster.set(index, alphaBits | (clamp(((pixel >> 16) & 0xFF) + red) << 16)
+                | (clamp(((pixel >> 8) & 0xFF) + green) << 8) | clamp((pixel & 0xFF) + blue));
+    }
+
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(255, channel));
+    }
+
+    /*
+     * @return offset of the neighbour pattern i blends towards
+     */
+    private static int compareOffset(int i, int width) {
+
+        if (i == 0 || i == 4) {
+            return 1;
+        } else if (i == 1 || i == 5) {
+            return -1;
+        } else if (i == 2 || i == 3) {
+            return -width;
+        }
+        return width;
+    }
+
+    /*
+     * @return 1 if pattern i is walked towards higher rows or columns, -1 if towards lower ones
+     */
+    private static int direction(int i) {
+        return i == 2 || i == 4 || i == 5 || i == 6 ? -1 : 1;
+    }
+
+    /*
+     * @return true if pattern i runs along a column, false if it runs along a row
+     */
+    private static boolean isVertical(int i) {
+        return i == 0 || i == 1 || i == 4 || i == 5;
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.Arrays;
+
+public class PatternMasks {
+
+    private int width;
+    private int height;
+    // the starting pixels of each pattern are kept one bit per pixel, column by column, so that
+    // walking through them goes in the same order as the loops in AlgorithmMLAA
+    private int wordsPerColumn;
+
+    // for each of the 8 patterns: a bit for every pixel a pattern starts at
+    private long[][] starts = new long[8][];
+    // for each of the 8 patterns: how many patterns start before each word of starts
+    private int[][] startRanks = new int[8][];
+    // for each of the 8 patterns: the length of every pattern found, in the same order as starts;
+    // only pixels a pattern starts at have a length, so nothing is stored for any other pixel
+    private int[][] lengths = new int[8][];
+    // for each of the 8 patterns: where every pattern found starts, as x * height + y, in the same
+    // order as lengths. Together they are the list of runs blending goes through, so it never
+    // has to look at a pixel no pattern starts at.
+    private int[][] runStarts = new int[8][];
+    // for each of the 8 patterns: how many patterns were found
+    private int[] patternCounts = new int[8];
+    // for each of the 8 patterns: length of the longest pattern found
+    private int[] longestPatterns = new int[8];
+
+    /*
+     * Creates empty masks; call reset before using them
+     */
+    protected PatternMasks() {
+        for (int i = 0; i < 8; i++) {
+            starts[i] = new long[0];
+            startRanks[i] = new int[0];
+            lengths[i] = new int[0];
+            runStarts[i] = new int[0];
+        }
+    }
+
+    protected PatternMasks(int width, int height) {
+        this();
+        reset(width, height);
+    }
+
+    /*
+     * Clears the masks for an image of the given size. The arrays only grow, so masks that are
+     * reset for images of the same size or smaller don't allocate anything.
+     */
+    protected void reset(int width, int height) {
+
+        this.width = width;
+        this.height = height;
+        this.wordsPerColumn = (height + 63) >>> 6;
+        int words = width * wordsPerColumn;
+        for (int i = 0; i < 8; i++) {
+            if (starts[i].length < words) {
+                starts[i] = new long[words];
+                startRanks[i] = new int[words];
+            } else {
+                Arrays.fill(starts[i], 0, words, 0L);
+            }
+            patternCounts[i] = 0;
+            longestPatterns[i] = 0;
+        }
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * Marks (x, y) as the starting pixel of pattern i. Each column has its own words, so different
+     * threads can mark pixels in different columns at the same time.
+     */
+    protected void setStart(int i, int x, int y) {
+        starts[i][x * wordsPerColumn + (y >>> 6)] |= 1L << y;
+    }
+
+    /*
+     * @return true if pattern i starts at (x, y)
+     */
+    protected boolean isStart(int i, int x, int y) {
+        return (starts[i][x * wordsPerColumn + (y >>> 6)] & (1L << y)) != 0;
+    }
+
+    /*
+     * Once every start has been marked, works out where each pattern's length goes. Must be called
+     * before any length is set.
+     */
+    protected void countStarts() {
+
+        int words = width * wordsPerColumn;
+        for (int i = 0; i < 8; i++) {
+            long[] bits = starts[i];
+            int[] ranks = startRanks[i];
+            int count = 0;
+            for (int w = 0; w < words; w++) {
+                ranks[w] = count;
+                count += Long.bitCount(bits[w]);
+            }
+            patternCounts[i] = count;
+            if (lengths[i].length < count) {
+                lengths[i] = new int[count];
+                runStarts[i] = new int[count];
+            }
+        }
+    }
+
+    /*
+     * @return number of patterns found for pattern i
+     */
+    protected int countPatterns(int i) {
+        return patternCounts[i];
+    }
+
+    /*
+     * Stores the length of the pattern i starting at (x, y); patterns starting in different
+     * columns can be stored from different threads. Every start needs a length before the runs
+     * are gone through.
+     */
+    protected void setLength(int i, int x, int y, int length) {
+
+        int rank = rank(i, x, y);
+        lengths[i][rank] = length;
+        runStarts[i][rank] = x * height + y;
+    }
+
+    /*
+     * Runs are numbered from 0 to countPatterns(i) - 1, column by column and top to bottom within
+     * a column, the same order nextStart goes through them in.
+     *
+     * @return where run n of pattern i starts, as x * height + y
+     */
+    protected int getRunStart(int i, int n) {
+        return runStarts[i][n];
+    }
+
+    /*
+     * @return length of run n of pattern i
+     */
+    protected int getRunLength(int i, int n) {
+        return lengths[i][n];
+    }
+
+    /*
+     * @return number of the first run of pattern i that starts in column x or to the right of it,
+     * or countPatterns(i) if there is none
+     */
+    protected int firstRun(int i, int x) {
+        return x < width ? startRanks[i][x * wordsPerColumn] : patternCounts[i];
+    }
+
+    /*
+     * Runs in a column are numbered top to bottom, so the runs of pattern i in column x starting
+     * from row fromY (inclusive) to toY (exclusive) are firstRun(i, x, fromY) to
+     * firstRun(i, x, toY) - 1, found without looking at any other run.
+     *
+     * @return number of the first run of pattern i that starts in column x at row y or below it,
+     * or in a column to the right if there is none
+     */
+    protected int firstRun(int i, int x, int y) {
+        return y < height ? rank(i, x, y) : firstRun(i, x + 1);
+    }
+
+    /*
+     * @return length of the pattern i starting at (x, y), or 0 if no pattern starts there
+     */
+    protected int getLength(int i, int x, int y) {
+        return isStart(i, x, y) ? lengths[i][rank(i, x, y)] : 0;
+    }
+
+    /*
+     * Called once per thread after the lengths are set
+     */
+    protected synchronized void updateLongestPatterns(int[] longest) {
+
+        for (int i = 0; i < 8; i++) {
+            longestPatterns[i] = Math.max(longestPatterns[i], longest[i]);
+        }
+    }
+
+    /*
+     * @return length of the longest pattern found for pattern i
+     */
+    protected int getLongestPattern(int i) {
+        return longestPatterns[i];
+    }
+
+    /*
+     * @return first row from fromY (inclusive) to toY (exclusive) where pattern i starts in column
+     * x, or -1 if there is none
+     */
+    protected int nextStart(int i, int x, int fromY, int toY) {
+
+        if (fromY >= toY) {
+            return -1;
+        }
+        long[] words = starts[i];
+        int w = x * wordsPerColumn + (fromY >>> 6);
+        int lastWord = x * wordsPerColumn + ((toY - 1) >>> 6);
+        long word = words[w] & (-1L << fromY);
+        while (true) {
+            if (word != 0) {
+                int y = ((w - x * wordsPerColumn) << 6) + Long.numberOfTrailingZeros(word);
+                return y < toY ? y : -1;
+            }
+            if (++w > lastWord) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /*
+     * Builds the changed pixels of pattern i the way locatingPatternN stores them: every pixel
+     * that some pattern stretches over.
+     *
+     * @return changed pixels of pattern i, indexed [x][y]
+     */
+    protected boolean[][] toChangedPixels(int i) {
+
+        boolean[][] changedPixels = new boolean[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = nextStart(i, x, 0, height); y >= 0; y = nextStart(i, x, y + 1, height)) {
+                int length = getLength(i, x, y);
+                int tempX = x;
+                int tempY = y;
+                for (int step = 0; step < length; step++) {
+                    changedPixels[tempX][tempY] = true;
+                    tempX += FusedPatternDetector.STEP_X[i];
+                    tempY += FusedPatternDetector.STEP_Y[i];
+                }
+            }
+        }
+        return changedPixels;
+    }
+
+    /*
+     * @return pattern lengths of pattern i the way locatingPatternN stores them, indexed [x][y]
+     */
+    protected double[][] toPatternLengths(int i) {
+
+        double[][] patternLengths = new double[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = nextStart(i, x, 0, height); y >= 0; y = nextStart(i, x, y + 1, height)) {
+                patternLengths[x][y] = getLength(i, x, y);
+            }
+        }
+        return patternLengths;
+    }
+
+    /*
+     * @return position of the pattern starting at (x, y) in the lengths of pattern i
+     */
+    private int rank(int i, int x, int y) {
+
+        int w = x * wordsPerColumn + (y >>> 6);
+        long below = starts[i][w] & ((1L << y) - 1);
+        return startRanks[i][w] + Long.bitCount(below);
+    }
+}
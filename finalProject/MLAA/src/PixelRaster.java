@@ -0,0 +1,234 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+public class PixelRaster {
+
+    private BufferedImage image;
+    private int width;
+    private int height;
+    private int type;
+
+    // packed ARGB of every pixel, row by row. For TYPE_INT_ARGB and TYPE_INT_RGB this is the
+    // image's own data, otherwise it is a copy made once when the raster is created. A reused
+    // buffer may be longer than the image. Null for a raw frame, whose pixels stay in frame.
+    private int[] pixels;
+    // the image's own data for TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR; null for every other type
+    private byte[] bytes;
+    // true when we can't reach the image's data and have to go through getRGB and setRGB
+    private boolean converted;
+    // the pixels of a raw frame, little endian; null unless the raster was made from one. Every
+    // pixel is read from and written to it directly.
+    private ByteBuffer frame;
+    private boolean rgba;
+
+    /*
+     * Pulls the pixel data out of the image. TYPE_INT_ARGB, TYPE_INT_RGB, TYPE_3BYTE_BGR and
+     * TYPE_4BYTE_ABGR images are read straight from their data buffer; any other image is
+     * converted to packed ARGB once.
+     */
+    protected PixelRaster(BufferedImage image) {
+        this(image, null);
+    }
+
+    /*
+     * Same as above, but copies are made into buffer when it is big enough, so nothing needs to
+     * be allocated for the image's pixels
+     */
+    protected PixelRaster(BufferedImage image, int[] buffer) {
+
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.type = image.getType();
+
+        WritableRaster raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) && isWholeIntRaster(raster)) {
+            pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        } else if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && isWholeByteRaster(raster)) {
+            bytes = ((DataBufferByte) raster.getDataBuffer()).getData();
+            pixels = buffer != null && buffer.length >= width * height ? buffer : new int[width * height];
+            unpackBytes();
+        } else {
+            converted = true;
+            pixels = image.getRGB(0, 0, width, height,
+                    buffer != null && buffer.length >= width * height ? buffer : null, 0, width);
+        }
+    }
+
+    /*
+     * Works on a raw frame, which is usually a memory mapped file. Nothing is copied: get reads
+     * every pixel straight from the frame's buffer and set writes it back there, so the frame is
+     * never held on the heap as well.
+     */
+    protected PixelRaster(RawFrame rawFrame) {
+
+        this.width = rawFrame.getWidth();
+        this.height = rawFrame.getHeight();
+        this.type = BufferedImage.TYPE_CUSTOM;
+        this.frame = rawFrame.getPixels();
+        this.rgba = rawFrame.getOrder() == RawFrame.RGBA;
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * The red, green and blue of every pixel are always right; the alpha byte is not meaningful for
+     * TYPE_INT_RGB images. The array may be longer than width * height.
+     *
+     * @return packed ARGB of every pixel, row by row, or null for a raw frame (see getFrame)
+     */
+    protected int[] getPixels() {
+        return pixels;
+    }
+
+    /*
+     * A little endian BGRA pixel read with getInt is already packed ARGB; an RGBA one has its red
+     * and blue the other way round (see isRGBA).
+     *
+     * @return pixels of the raw frame the raster was made from, starting at index 0, or null
+     */
+    protected ByteBuffer getFrame() {
+        return frame;
+    }
+
+    /*
+     * @return true if the raw frame's pixels are RGBA rather than BGRA
+     */
+    protected boolean isRGBA() {
+        return rgba;
+    }
+
+    /*
+     * Writes to a converted raster go through setRGB, which isn't safe to call from several
+     * threads at once.
+     *
+     * @return true if the image's data couldn't be reached directly
+     */
+    protected boolean isConverted() {
+        return converted;
+    }
+
+    /*
+     * @return packed ARGB of the pixel at index
+     */
+    protected int get(int index) {
+
+        if (frame != null) {
+            // a little endian BGRA pixel read as an int is already packed ARGB
+            int pixel = frame.getInt(index * 4);
+            return rgba ? swapRedAndBlue(pixel) : pixel;
+        }
+        return pixels[index];
+    }
+
+    /*
+     * Writes a packed ARGB value to the pixel at index, both here and in the image
+     */
+    protected void set(int index, int argb) {
+
+        if (frame != null) {
+            frame.putInt(index * 4, rgba ? swapRedAndBlue(argb) : argb);
+        } else if (bytes != null) {
+            if (type == BufferedImage.TYPE_3BYTE_BGR) {
+                int offset = index * 3;
+                bytes[offset] = (byte) argb;
+                bytes[offset + 1] = (byte) (argb >> 8);
+                bytes[offset + 2] = (byte) (argb >> 16);
+            } else {
+                int offset = index * 4;
+                bytes[offset] = (byte) (argb >>> 24);
+                bytes[offset + 1] = (byte) argb;
+                bytes[offset + 2] = (byte) (argb >> 8);
+                bytes[offset + 3] = (byte) (argb >> 16);
+            }
+            pixels[index] = argb;
+        } else if (converted) {
+            // other color models may not store the value exactly, so read back what was stored
+            image.setRGB(index % width, index / width, argb);
+            pixels[index] = image.getRGB(index % width, index / width);
+        } else if (type == BufferedImage.TYPE_INT_RGB) {
+            pixels[index] = argb & 0xFFFFFF;
+        } else {
+            pixels[index] = argb;
+        }
+    }
+
+    /*
+     * Turns packed ARGB into packed ABGR, and back
+     */
+    private static int swapRedAndBlue(int pixel) {
+        return (pixel & 0xFF00FF00) | ((pixel >> 16) & 0xFF) | ((pixel & 0xFF) << 16);
+    }
+
+    /*
+     * Converts the interleaved bytes of the image into packed ARGB
+     */
+    private void unpackBytes() {
+
+        int size = width * height;
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            for (int i = 0, offset = 0; i < size; i++, offset += 3) {
+                pixels[i] = 0xFF000000 | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 1] & 0xFF) << 8)
+                        | (bytes[offset] & 0xFF);
+            }
+        } else {
+            for (int i = 0, offset = 0; i < size; i++, offset += 4) {
+                pixels[i] = ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 3] & 0xFF) << 16)
+                        | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+            }
+        }
+    }
+
+    /*
+     * Sub images share the data buffer of their parent, in which case the pixels don't start at
+     * the beginning of the array or aren't next to each other.
+     *
+     * @return true if the raster's int data holds exactly this image, one pixel per element
+     */
+    private boolean isWholeIntRaster(WritableRaster raster) {
+
+        return raster.getDataBuffer() instanceof DataBufferInt && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0 && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width;
+    }
+
+    /*
+     * @return true if the raster's byte data holds exactly this image, with the standard band
+     * order for its type
+     */
+    private boolean isWholeByteRaster(WritableRaster raster) {
+
+        if (!(raster.getDataBuffer() instanceof DataBufferByte) || raster.getDataBuffer().getNumBanks() != 1
+                || raster.getDataBuffer().getOffset() != 0 || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+            return false;
+        }
+
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        int pixelStride = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+        if (sampleModel.getPixelStride() != pixelStride || sampleModel.getScanlineStride() != width * pixelStride) {
+            return false;
+        }
+        if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            return bandOffsets.length == 3 && bandOffsets[0] == 2 && bandOffsets[1] == 1 && bandOffsets[2] == 0;
+        }
+        return bandOffsets.length == 4 && bandOffsets[0] == 3 && bandOffsets[1] == 2 && bandOffsets[2] == 1
+                && bandOffsets[3] == 0;
+    }
+}
@@ -0,0 +1,260 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+public class RawFrame {
+
+    /*
+     * A raw frame is a 16 byte header followed by the pixels, 4 bytes each, row by row with
+     * nothing between rows. The header holds four little endian ints: MAGIC, the width, the
+     * height and the channel order (RGBA or BGRA). There is no compression, so a frame can be
+     * mapped into memory and worked on in place, e.g. when stages of a render farm pass frames to
+     * each other through files on tmpfs.
+     */
+    protected static final int MAGIC = 0x46414C4D; // "MLAF" when read as bytes
+    protected static final int HEADER_SIZE = 16;
+    protected static final int RGBA = 0;
+    protected static final int BGRA = 1;
+
+    // the whole frame, header included: a mapped file, or memory the frame was wrapped around
+    private ByteBuffer buffer;
+    private int width;
+    private int height;
+    private int order;
+
+    private RawFrame(ByteBuffer buffer, int width, int height, int order) {
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.order = order;
+    }
+
+    /*
+     * Maps an existing frame file into memory. Changes to a writable frame go straight to the
+     * file.
+     *
+     * @return the frame in the file
+     */
+    protected static RawFrame open(Path path, boolean writable) throws IOException {
+
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException(path + " is too short to be a raw frame");
+                }
+            }
+            header.flip();
+            checkHeader(header, path.toString(), channel.size());
+
+            MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, 0, frameSize(header.getInt(4), header.getInt(8)));
+            return new RawFrame(buffer, header.getInt(4), header.getInt(8), header.getInt(12));
+        }
+    }
+
+    /*
+     * Works on a frame that is already in memory, such as a request body, instead of mapping a
+     * file. Changes to the frame go straight into the buffer, so a heap buffer made with
+     * ByteBuffer.wrap can be blended in place.
+     *
+     * @return the frame starting at the buffer's position
+     */
+    protected static RawFrame wrap(ByteBuffer buffer) throws IOException {
+
+        ByteBuffer frame = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (frame.remaining() < HEADER_SIZE) {
+            throw new IOException("too short to be a raw frame");
+        }
+        checkHeader(frame, "buffer", frame.remaining());
+        return new RawFrame(frame, frame.getInt(4), frame.getInt(8), frame.getInt(12));
+    }
+
+    /*
+     * Checks the little endian header at the start of header against the bytes there are
+     *
+     * @param name what the frame is read from, for the messages
+     */
+    private static void checkHeader(ByteBuffer header, String name, long available) throws IOException {
+
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(name + " is not a raw frame");
+        }
+        int width = header.getInt(4);
+        int height = header.getInt(8);
+        int order = header.getInt(12);
+        if (width < 0 || height < 0 || (order != RGBA && order != BGRA)) {
+            throw new IOException(name + " has a broken raw frame header");
+        }
+        if (available < HEADER_SIZE + 4L * width * height) {
+            throw new IOException(name + " is shorter than its header says");
+        }
+    }
+
+    /*
+     * Creates a frame file of the given size, all pixels transparent black, and maps it into
+     * memory
+     *
+     * @return the new frame
+     */
+    protected static RawFrame create(Path path, int width, int height, int order) throws IOException {
+
+        if (order != RGBA && order != BGRA) {
+            throw new IllegalArgumentException("order must be RGBA or BGRA");
+        }
+        long size = frameSize(width, height);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, width);
+            buffer.putInt(8, height);
+            buffer.putInt(12, order);
+            return new RawFrame(buffer, width, height, order);
+        }
+    }
+
+    /*
+     * Writes an image as a new frame file
+     *
+     * @return the new frame
+     */
+    protected static RawFrame fromImage(BufferedImage image, Path path, int order) throws IOException {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        RawFrame frame = create(path, width, height, order);
+
+        // a row at a time, so a big image doesn't need a second copy of itself
+        ByteBuffer pixels = frame.getPixels();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int offset = (y * width + x) * 4;
+                if (order == BGRA) {
+                    pixels.putInt(offset, argb);
+                } else {
+                    pixels.putInt(offset, (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF) | ((argb & 0xFF) << 16));
+                }
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * @return TYPE_INT_ARGB copy of the frame
+     */
+    protected BufferedImage toImage() {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        ByteBuffer pixels = getPixels();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels.getInt((y * width + x) * 4);
+                row[x] = order == BGRA ? pixel
+                        : (pixel & 0xFF00FF00) | ((pixel >> 16) & 0xFF) | ((pixel & 0xFF) << 16);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    protected int getWidth() {
+        return width;
+    }
+
+    protected int getHeight() {
+        return height;
+    }
+
+    /*
+     * @return RGBA or BGRA
+     */
+    protected int getOrder() {
+        return order;
+    }
+
+    /*
+     * @return the pixels, starting at index 0, in little endian order. A BGRA pixel read with
+     * getInt is packed ARGB.
+     */
+    protected ByteBuffer getPixels() {
+        return buffer.duplicate().position(HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * Makes sure every change to a writable frame has reached the file; frames that were wrapped
+     * around memory have no file
+     */
+    protected void force() {
+
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private static long frameSize(int width, int height) {
+
+        long size = HEADER_SIZE + 4L * width * height;
+        // a mapped buffer is indexed with an int
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(width + "x" + height + " is too big for a raw frame");
+        }
+        return size;
+    }
+
+    /*
+     * Converts an image to a raw frame or a raw frame to an image. Files ending in .raw are raw
+     * frames; anything else is read or written through ImageIO.
+     *
+     * Usage: java RawFrame <input> <output> [rgba|bgra]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.err.println("Usage: java RawFrame <input> <output> [rgba|bgra]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        int order = args.length > 2 && args[2].equalsIgnoreCase("rgba") ? RGBA : BGRA;
+
+        if (isRaw(output)) {
+            BufferedImage image = isRaw(input) ? open(input, false).toImage() : ImageIO.read(input.toFile());
+            if (image == null) {
+                throw new IOException("can't read " + input);
+            }
+            fromImage(image, output, order).force();
+        } else {
+            String name = output.getFileName().toString();
+            File file = output.toFile();
+            if (!ImageIO.write(open(input, false).toImage(), name.substring(name.lastIndexOf('.') + 1), file)) {
+                throw new IOException("no ImageWriter for " + name);
+            }
+        }
+    }
+
+    /*
+     * @return true if the file is named like a raw frame, i.e. ends in .raw
+     */
+    protected static boolean isRaw(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".raw");
+    }
+}
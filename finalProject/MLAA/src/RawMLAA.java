@@ -0,0 +1,37 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+public class RawMLAA {
+
+    /*
+     * Runs MLAA over a raw frame (see RawFrame). The frame is memory mapped and blended in place,
+     * so there is no decoding or encoding and the pixels are never copied onto the heap; only the
+     * luminance and edge bits the patterns are found from are. Given an output file, the input is
+     * copied there first and the copy is blended instead.
+     *
+     * Usage: java RawMLAA <input frame> [output frame]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println("Usage: java RawMLAA <input frame> [output frame]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        if (args.length > 1) {
+            Path output = Paths.get(args[1]);
+            Files.copy(path, output, StandardCopyOption.REPLACE_EXISTING);
+            path = output;
+        }
+
+        long start = System.nanoTime();
+        RawFrame frame = RawFrame.open(path, true);
+        new MLAAEngine(50).algorithm(frame);
+        frame.force();
+        System.out.println(String.format(Locale.ROOT, "%dx%d in %.1f ms", frame.getWidth(), frame.getHeight(),
+                (System.nanoTime() - start) / 1e6));
+    }
+}
@@ -0,0 +1,643 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+
+public class RegressionMLAA {
+
+    /*
+     * One way of running MLAA over an image. It may change the image it is given.
+     */
+    protected interface Implementation {
+
+        /*
+         * @return image with MLAA
+         */
+        BufferedImage run(BufferedImage image) throws Exception;
+    }
+
+    /*
+     * How far one implementation is from the reference over the whole corpus
+     */
+    private static class Difference {
+        private int images;
+        private int differentImages;
+        private long differentPixels;
+        private int maximumError;
+        private String worstImage;
+        // largest channel error still counted as a pass
+        private int tolerance;
+    }
+
+    // image types the generated images come in: the ones PixelRaster reads directly, plus some it
+    // has to convert
+    private static final int[] IMAGE_TYPES = { BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_BYTE_GRAY };
+
+    private static final int[][] SIZES = { { 1, 1 }, { 2, 2 }, { 3, 3 }, { 1, 7 }, { 7, 1 }, { 1, 64 }, { 64, 1 },
+            { 17, 13 }, { 64, 64 } };
+
+    private static final String[] KINDS = { "noise", "columns", "rows", "staircase", "corners", "steps", "alpha" };
+
+    private AlgorithmMLAA reference = new AlgorithmMLAA();
+    private Map<String, Implementation> implementations = new LinkedHashMap<String, Implementation>();
+    private Map<String, Difference> differences = new LinkedHashMap<String, Difference>();
+    // implementations with options that change the output on purpose, and how what each has to
+    // give is worked out instead
+    private Map<String, Implementation> modes = new LinkedHashMap<String, Implementation>();
+    private Map<String, Implementation> expectations = new HashMap<String, Implementation>();
+
+    protected RegressionMLAA() {
+
+        // every image goes through the same AlgorithmMLAA, so its engine reuses its buffers
+        // between images of different sizes and types
+        AlgorithmMLAA shared = new AlgorithmMLAA();
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        addImplementation("algorithm", shared::algorithm);
+        addImplementation("parallel", image -> shared.parallelAlgorithm(image, pool));
+        addImplementation("fused", image -> {
+            PixelRaster raster = new PixelRaster(image);
+            new PatternBlender().blend(raster, new FusedPatternDetector(50).detect(raster));
+            return image;
+        });
+        // in two phases, with the edge map going through the cache and the binary format
+        EdgeMapCache cache = new EdgeMapCache();
+        MLAAEngine engine = new MLAAEngine(50);
+        addImplementation("two-phase", image -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            cache.detect(engine, image).write(bytes);
+            return shared.blend(image, EdgeMap.read(new ByteArrayInputStream(bytes.toByteArray())));
+        });
+        // the second time an image goes through the result cache, so the result is the stored one
+        ResultCache results = new ResultCache(engine, 16L << 20);
+        addImplementation("cached", image -> {
+            results.algorithm(copy(image));
+            return results.algorithm(image);
+        });
+        // with options made anew for every image, like a request would bring; at their defaults
+        // they have to change nothing
+        addImplementation("options", image -> engine.algorithm(image, MLAAOptions.DEFAULT.withStrength(50)
+                .withMaximumRunLength(0).withPatterns(MLAAOptions.ALL_PATTERNS).withAlpha(MLAAOptions.Alpha.OPAQUE)));
+        // the default edge kernel is the vector one when the Vector API is there, so check the
+        // scalar one separately
+        addImplementation("scalar", image -> {
+            PixelRaster raster = new PixelRaster(image);
+            PatternMasks masks = new FusedPatternDetector(50).detect(raster, new LumaPlane(EdgeKernel.SCALAR),
+                    new PatternMasks(), null);
+            new PatternBlender().blend(raster, masks);
+            return image;
+        });
+        // as the second frame of a sequence whose first frame differs in a block in the middle, so
+        // only the tiles around the block are recomputed. The halo is kept small enough that the
+        // test images are done region by region rather than in one full pass.
+        addImplementation("sequence", image -> {
+            SequenceMLAA sequence = new SequenceMLAA(50, 24, 16);
+            BufferedImage first = copy(image);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            for (int y = height / 3; y < height * 2 / 3; y++) {
+                for (int x = width / 3; x < width * 2 / 3; x++) {
+                    first.setRGB(x, y, ~first.getRGB(x, y));
+                }
+            }
+            sequence.next(first);
+            return sequence.next(image);
+        }, 3);
+        // the same edit brought up to date through dirty rectangles. The margin starts out small,
+        // so windows that are too small and have to grow are checked as well.
+        IncrementalMLAA incremental = new IncrementalMLAA(50, 2);
+        addImplementation("incremental", image -> {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            BufferedImage edited = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            edited.setRGB(0, 0, width, height, image.getRGB(0, 0, width, height, null, 0, width), 0, width);
+            BufferedImage result = copy(edited);
+            for (int y = height / 3; y < height * 2 / 3; y++) {
+                for (int x = width / 3; x < width * 2 / 3; x++) {
+                    result.setRGB(x, y, ~result.getRGB(x, y));
+                }
+            }
+            shared.algorithm(result);
+            Rectangle dirty = new Rectangle(width / 3, height / 3, width * 2 / 3 - width / 3,
+                    height * 2 / 3 - height / 3);
+            incremental.update(result, edited, Collections.singletonList(dirty));
+            image.setRGB(0, 0, width, height, result.getRGB(0, 0, width, height, null, 0, width), 0, width);
+            return image;
+        }, 3);
+        // through a memory mapped raw frame, which works in packed ARGB
+        addImplementation("raw", image -> {
+            Path path = Files.createTempFile("regression", ".raw");
+            try {
+                RawFrame frame = RawFrame.fromImage(image, path, RawFrame.RGBA);
+                shared.algorithm(frame);
+                int width = image.getWidth();
+                image.setRGB(0, 0, width, image.getHeight(), frame.toImage().getRGB(0, 0, width, image.getHeight(),
+                        null, 0, width), 0, width);
+            } finally {
+                Files.delete(path);
+            }
+            return image;
+        }, 3);
+
+        // options the reference doesn't have, checked against the same patterns blended the
+        // straightforward way instead
+        MLAAOptions accumulate = MLAAOptions.DEFAULT.withBlend(MLAAOptions.Blend.ACCUMULATE);
+        addMode("accumulate", image -> engine.algorithm(image, accumulate), image -> accumulated(image, accumulate));
+        addMode("accumulate-pooled", image -> engine.algorithm(image, accumulate, pool),
+                image -> accumulated(image, accumulate));
+        MLAAOptions keep = MLAAOptions.DEFAULT.withAlpha(MLAAOptions.Alpha.KEEP);
+        addMode("alpha-keep", image -> engine.algorithm(image, keep), image -> blended(image, keep));
+        MLAAOptions blend = MLAAOptions.DEFAULT.withAlpha(MLAAOptions.Alpha.BLEND);
+        addMode("alpha-blend", image -> engine.algorithm(image, blend), image -> blended(image, blend));
+        // short bands, so plenty of patterns cross from one band into the next. Streaming cuts
+        // patterns off, so it has to give what algorithm() gives with the same options. It works
+        // in packed ARGB, so both go through a TYPE_INT_ARGB copy.
+        StreamingMLAA streaming = new StreamingMLAA(50, StreamingMLAA.DEFAULT_MAXIMUM_PATTERN_LENGTH, 16);
+        addMode("streaming", image -> {
+            BufferedImage argb = toARGB(image);
+            int width = argb.getWidth();
+            streaming.process(new StreamingMLAA.RowSource() {
+                @Override
+                public int getWidth() {
+                    return width;
+                }
+
+                @Override
+                public int getHeight() {
+                    return argb.getHeight();
+                }
+
+                @Override
+                public void readRows(int y, int rows, int[] pixels, int offset) {
+                    argb.getRGB(0, y, width, rows, pixels, offset, width);
+                }
+            }, (y, rows, pixels, offset) -> argb.setRGB(0, y, width, rows, pixels, offset, width));
+            return argb;
+        }, image -> engine.algorithm(toARGB(image), streaming.getOptions()));
+    }
+
+    /*
+     * Adds an implementation to check against referenceAlgorithm, which has to match it exactly
+     */
+    protected void addImplementation(String name, Implementation implementation) {
+        addImplementation(name, implementation, 0);
+    }
+
+    /*
+     * Adds an implementation to check against referenceAlgorithm
+     *
+     * @param tolerance largest difference in any channel of any pixel that still counts as a match;
+     * differences are reported either way
+     */
+    protected void addImplementation(String name, Implementation implementation, int tolerance) {
+        Difference difference = new Difference();
+        difference.tolerance = tolerance;
+        implementations.put(name, implementation);
+        differences.put(name, difference);
+    }
+
+    /*
+     * Adds an implementation whose output differs from referenceAlgorithm's on purpose. It is
+     * checked against what expectation gives for the same image instead, which it has to match
+     * exactly.
+     */
+    protected void addMode(String name, Implementation implementation, Implementation expectation) {
+        modes.put(name, implementation);
+        expectations.put(name, expectation);
+        differences.put(name, new Difference());
+    }
+
+    /*
+     * Runs the original referenceAlgorithm over the test images and a set of generated edge cases
+     * (single pixels, single rows and columns, images with alpha, patterns running into the
+     * borders, luminance differences right at the strength), then runs every other
+     * implementation over the same images and compares them pixel by pixel. Each implementation
+     * must match the reference exactly.
+     *
+     * With a golden directory, the reference output of each test image is also compared with the
+     * PNG of the same name there, which is written the first time round. That catches changes to
+     * the reference itself.
+     *
+     * Usage: java RegressionMLAA [test image directory] [golden directory]
+     */
+    public static void main(String[] args) throws Exception {
+
+        File testImages = new File(args.length > 0 ? args[0] : "../testImages");
+        File golden = args.length > 1 ? new File(args[1]) : null;
+
+        RegressionMLAA regression = new RegressionMLAA();
+        System.out.println("Edge kernel: " + EdgeKernel.getDefault().getName());
+        boolean identical = regression.run(testImages, golden);
+        regression.report();
+
+        if (!identical) {
+            System.exit(1);
+        }
+    }
+
+    /*
+     * @return true if every implementation matched the reference on every image, within its
+     * tolerance
+     */
+    protected boolean run(File testImages, File golden) throws Exception {
+
+        boolean identical = true;
+
+        File[] files = testImages.listFiles((directory, name) -> name.toLowerCase(Locale.ROOT).endsWith(".png"));
+        if (files == null) {
+            throw new IOException("can't list " + testImages);
+        }
+        Arrays.sort(files);
+        if (golden != null) {
+            golden.mkdirs();
+        }
+
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                continue;
+            }
+            BufferedImage expected = reference.referenceAlgorithm(copy(image));
+
+            if (golden != null) {
+                File goldenFile = new File(golden, file.getName());
+                if (goldenFile.exists()) {
+                    identical &= check("golden", file.getName(), ImageIO.read(goldenFile), expected);
+                } else {
+                    ImageIO.write(expected, "png", goldenFile);
+                }
+            }
+            identical &= checkAll(file.getName(), image, expected);
+            identical &= checkModes(file.getName(), image);
+        }
+
+        for (int type : IMAGE_TYPES) {
+            for (int[] size : SIZES) {
+                for (String kind : KINDS) {
+                    String name = String.format(Locale.ROOT, "%s-%dx%d-type%d", kind, size[0], size[1], type);
+                    BufferedImage image = generate(kind, size[0], size[1], type);
+                    identical &= checkAll(name, image, reference.referenceAlgorithm(copy(image)));
+                    identical &= checkModes(name, image);
+                }
+            }
+        }
+
+        identical &= checkLongEdge();
+        identical &= checkPalettes();
+        return identical;
+    }
+
+    /*
+     * A frame of a sequence where one pixel changes next to a horizontal edge much longer than
+     * the maximum pattern length, so the runs through the recomputed region reach far outside it
+     * and the region has to grow to hold them
+     *
+     * @return true if the sequence's result matches the reference
+     */
+    private boolean checkLongEdge() throws Exception {
+
+        int width = 1024;
+        int height = 128;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, y >= 63 && x >= 20 ? 0xFFE0E0E0 : 0xFF202020);
+            }
+        }
+        BufferedImage first = copy(image);
+        first.setRGB(200, 10, 0xFFFFFFFF);
+
+        SequenceMLAA sequence = new SequenceMLAA();
+        sequence.next(first);
+        BufferedImage expected = reference.referenceAlgorithm(copy(image));
+        return check("sequence", "long-edge-1024x128", sequence.next(image), expected);
+    }
+
+    /*
+     * Two indexed images with the same indices but different palettes, one after the other
+     * through a result cache. They look nothing alike, so the second must not get the first's
+     * result.
+     *
+     * @return true if both results match the reference
+     */
+    private boolean checkPalettes() throws Exception {
+
+        byte[] greys = new byte[256];
+        byte[] inverted = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            greys[i] = (byte) i;
+            inverted[i] = (byte) (255 - i * 7);
+        }
+        BufferedImage first = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, greys, greys, greys));
+        BufferedImage second = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, inverted, greys, inverted));
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                int index = y * 3 < x ? 10 : 200;
+                first.getRaster().setSample(x, y, 0, index);
+                second.getRaster().setSample(x, y, 0, index);
+            }
+        }
+
+        ResultCache results = new ResultCache(new MLAAEngine(50), 16L << 20);
+        boolean identical = true;
+        for (BufferedImage image : new BufferedImage[] { first, second }) {
+            BufferedImage expected = reference.referenceAlgorithm(copy(image));
+            identical &= check("cached", "palette-" + (image == first ? "greys" : "colours"),
+                    results.algorithm(copy(image)), expected);
+        }
+        return identical;
+    }
+
+    private boolean checkAll(String name, BufferedImage image, BufferedImage expected) throws Exception {
+
+        boolean identical = true;
+        for (Map.Entry<String, Implementation> implementation : implementations.entrySet()) {
+            BufferedImage actual = implementation.getValue().run(copy(image));
+            identical &= check(implementation.getKey(), name, actual, expected);
+        }
+        return identical;
+    }
+
+    /*
+     * Runs every mode over the image and compares it with what its expectation gives
+     *
+     * @return true if every mode matched its expectation exactly
+     */
+    private boolean checkModes(String name, BufferedImage image) throws Exception {
+
+        boolean identical = true;
+        for (Map.Entry<String, Implementation> mode : modes.entrySet()) {
+            BufferedImage expected = expectations.get(mode.getKey()).run(copy(image));
+            identical &= check(mode.getKey(), name, mode.getValue().run(copy(image)), expected);
+        }
+        return identical;
+    }
+
+    /*
+     * Blends the image the way writingPatterns does, one pattern after another and one pixel at a
+     * time through getRGB and setRGB, but handles alpha the way the options say. The patterns are
+     * the ones FusedPatternDetector finds, which "fused" checks against the reference.
+     *
+     * @return image, blended
+     */
+    private static BufferedImage blended(BufferedImage image, MLAAOptions options) {
+
+        PatternMasks masks = new FusedPatternDetector(options).detect(new PixelRaster(copy(image)));
+        BlendWeights weights = new BlendWeights();
+        for (int i = 0; i < 8; i++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int y = 0; y < image.getHeight(); y++) {
+                    int length = masks.getLength(i, x, y);
+                    if (length == 0) {
+                        continue;
+                    }
+                    double[] patternWeights = weights.getWeights(length);
+                    for (int step = 0; step < patternWeights.length; step++) {
+                        int currentX = x + step * FusedPatternDetector.STEP_X[i];
+                        int currentY = y + step * FusedPatternDetector.STEP_Y[i];
+                        int current = image.getRGB(currentX, currentY);
+                        int compare = image.getRGB(currentX + FusedPatternDetector.PRIMARY_X[i],
+                                currentY + FusedPatternDetector.PRIMARY_Y[i]);
+
+                        double a = patternWeights[step];
+                        int pixel = 0;
+                        for (int shift = 0; shift < 24; shift += 8) {
+                            pixel |= blendChannel(a, current, compare, shift) << shift;
+                        }
+                        if (options.getAlpha() == MLAAOptions.Alpha.OPAQUE) {
+                            pixel |= 0xFF000000;
+                        } else if (options.getAlpha() == MLAAOptions.Alpha.KEEP) {
+                            pixel |= current & 0xFF000000;
+                        } else {
+                            pixel |= blendChannel(a, current, compare, 24) << 24;
+                        }
+                        image.setRGB(currentX, currentY, pixel);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    private static int blendChannel(double a, int current, int compare, int shift) {
+        return (int) Math.round((1.0 - a) * ((current >>> shift) & 0xFF) + a * ((compare >>> shift) & 0xFF));
+    }
+
+    /*
+     * Blends the image out of place: every pattern works out how much it would change each
+     * channel of the pixels as they were before blending, the changes to every pixel are added
+     * up, and only then is each pixel written, clamped to 0 to 255
+     *
+     * @return image, blended
+     */
+    private static BufferedImage accumulated(BufferedImage image, MLAAOptions options) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] original = image.getRGB(0, 0, width, height, null, 0, width);
+        PatternMasks masks = new FusedPatternDetector(options).detect(new PixelRaster(copy(image)));
+        BlendWeights weights = new BlendWeights();
+
+        // change to every channel of every pixel, indexed [shift / 8][pixel]
+        int[][] changes = new int[4][width * height];
+        boolean[] blended = new boolean[width * height];
+        for (int i = 0; i < 8; i++) {
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    int length = masks.getLength(i, x, y);
+                    if (length == 0) {
+                        continue;
+                    }
+                    double[] patternWeights = weights.getWeights(length);
+                    for (int step = 0; step < patternWeights.length; step++) {
+                        int currentX = x + step * FusedPatternDetector.STEP_X[i];
+                        int currentY = y + step * FusedPatternDetector.STEP_Y[i];
+                        int index = currentY * width + currentX;
+                        int current = original[index];
+                        int compare = original[index + FusedPatternDetector.PRIMARY_Y[i] * width
+                                + FusedPatternDetector.PRIMARY_X[i]];
+                        for (int shift = 0; shift < 32; shift += 8) {
+                            changes[shift / 8][index] += (int) Math.round(patternWeights[step]
+                                    * (((compare >>> shift) & 0xFF) - ((current >>> shift) & 0xFF)));
+                        }
+                        blended[index] = true;
+                    }
+                }
+            }
+        }
+
+        for (int index = 0; index < width * height; index++) {
+            if (!blended[index]) {
+                continue;
+            }
+            int pixel = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int channel = ((original[index] >>> shift) & 0xFF) + changes[shift / 8][index];
+                pixel |= Math.max(0, Math.min(255, channel)) << shift;
+            }
+            if (options.getAlpha() == MLAAOptions.Alpha.OPAQUE) {
+                pixel |= 0xFF000000;
+            } else if (options.getAlpha() == MLAAOptions.Alpha.KEEP) {
+                pixel = (pixel & 0xFFFFFF) | (original[index] & 0xFF000000);
+            }
+            if (pixel != original[index]) {
+                image.setRGB(index % width, index / width, pixel);
+            }
+        }
+        return image;
+    }
+
+    /*
+     * Compares every channel, alpha included, of every pixel
+     *
+     * @return true if the images are identical, or differ by no more than the implementation's
+     * tolerance
+     */
+    private boolean check(String implementation, String name, BufferedImage actual, BufferedImage expected) {
+
+        Difference difference = differences.get(implementation);
+        if (difference == null) {
+            difference = new Difference();
+            differences.put(implementation, difference);
+        }
+        difference.images++;
+
+        if (actual.getWidth() != expected.getWidth() || actual.getHeight() != expected.getHeight()) {
+            System.out.println(implementation + " on " + name + ": size differs");
+            difference.differentImages++;
+            difference.maximumError = 255;
+            difference.worstImage = name;
+            return false;
+        }
+
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int[] actualPixels = actual.getRGB(0, 0, width, height, null, 0, width);
+        int[] expectedPixels = expected.getRGB(0, 0, width, height, null, 0, width);
+
+        long differentPixels = 0;
+        int maximumError = 0;
+        int firstDifference = -1;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            if (actualPixels[i] != expectedPixels[i]) {
+                differentPixels++;
+                if (firstDifference < 0) {
+                    firstDifference = i;
+                }
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int error = Math.abs(((actualPixels[i] >>> shift) & 0xFF) - ((expectedPixels[i] >>> shift) & 0xFF));
+                    maximumError = Math.max(maximumError, error);
+                }
+            }
+        }
+
+        if (differentPixels == 0) {
+            return true;
+        }
+
+        System.out.println(String.format(Locale.ROOT,
+                "%s on %s: %d pixels differ, max channel error %d, first at (%d, %d): %08x instead of %08x",
+                implementation, name, differentPixels, maximumError, firstDifference % width, firstDifference / width,
+                actualPixels[firstDifference], expectedPixels[firstDifference]));
+        difference.differentImages++;
+        difference.differentPixels += differentPixels;
+        if (maximumError > difference.maximumError) {
+            difference.maximumError = maximumError;
+            difference.worstImage = name;
+        }
+        return maximumError <= difference.tolerance;
+    }
+
+    private void report() {
+
+        System.out.println(String.format(Locale.ROOT, "%-17s %8s %10s %14s %10s %10s  %s", "", "images",
+                "different", "pixels", "max error", "tolerance", "worst image"));
+        for (Map.Entry<String, Difference> entry : differences.entrySet()) {
+            Difference difference = entry.getValue();
+            System.out.println(String.format(Locale.ROOT, "%-17s %8d %10d %14d %10d %10d  %s", entry.getKey(),
+                    difference.images, difference.differentImages, difference.differentPixels,
+                    difference.maximumError, difference.tolerance,
+                    difference.worstImage == null ? "-" : difference.worstImage));
+        }
+    }
+
+    /*
+     * Makes one of the edge case images. Every image is made from the same seed, so the corpus is
+     * the same on every run.
+     */
+    private static BufferedImage generate(String kind, int width, int height, int type) {
+
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(31L * width + height);
+        int[] pixels = new int[width * height];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel;
+                if (kind.equals("noise")) {
+                    pixel = 0xFF000000 | random.nextInt(0x1000000);
+                } else if (kind.equals("columns")) {
+                    // bars running from the top border to the bottom one
+                    pixel = (x / 2) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+                } else if (kind.equals("rows")) {
+                    pixel = (y / 3) % 2 == 0 ? 0xFF202020 : 0xFFE0E0E0;
+                } else if (kind.equals("staircase")) {
+                    pixel = y * 3 < x ? 0xFF103070 : 0xFFF0C080;
+                } else if (kind.equals("corners")) {
+                    // lone pixels in the corners, each with only two neighbours
+                    boolean corner = (x == 0 || x == width - 1) && (y == 0 || y == height - 1);
+                    pixel = corner ? 0xFFFFFFFF : 0xFF000000;
+                } else if (kind.equals("steps")) {
+                    // grey levels 50 apart, so neighbours differ by exactly the default strength
+                    int grey = 50 * ((x + 2 * y) % 6);
+                    pixel = 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+                } else {
+                    // random colours with random alpha; blended pixels come out opaque
+                    pixel = random.nextInt();
+                }
+                pixels[y * width + x] = pixel;
+            }
+        }
+
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    /*
+     * @return copy of image as TYPE_INT_ARGB
+     */
+    private static BufferedImage toARGB(BufferedImage image) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        argb.setRGB(0, 0, width, height, image.getRGB(0, 0, width, height, null, 0, width), 0, width);
+        return argb;
+    }
+
+    /*
+     * @return image with the same type and pixels as the one given, that can be changed without
+     * changing it
+     */
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+}
@@ -0,0 +1,486 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+public class ResultCache {
+
+    // the memory tier holds results up to this many bytes by default
+    protected static final long DEFAULT_MAXIMUM_BYTES = 256L << 20;
+
+    /*
+     * A result file on disk: MAGIC, VERSION, the width, the height, the image type, 1 if the data
+     * is the data buffer's array and 0 if it is data elements, the kind of data (INT_DATA,
+     * BYTE_DATA or SHORT_DATA) and its length as ints, then the data element by element
+     */
+    protected static final int MAGIC = 0x4D4C4152; // "MLAR" when read as bytes
+    protected static final int VERSION = 1;
+    private static final int INT_DATA = 0;
+    private static final int BYTE_DATA = 1;
+    private static final int SHORT_DATA = 2;
+    private static final String SUFFIX = ".mlaa";
+
+    private MLAAEngine engine;
+    private long maximumBytes;
+    private long bytes;
+    // results by key, the least recently used first
+    private LinkedHashMap<Long, Result> results = new LinkedHashMap<Long, Result>(16, 0.75f, true);
+
+    // null when there is no disk tier
+    private Path directory;
+    private long maximumDiskBytes;
+    // space the files of the disk tier take up, counted once when the first result is written
+    // and kept up to date from then on, so the directory is only listed when it is over budget;
+    // -1 until then
+    private long diskBytes = -1;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long diskEvictions;
+
+    /*
+     * The data of an image after MLAA: a copy of its data buffer's array when that holds exactly
+     * the image (see ContentHash.getData), otherwise its data elements as getDataElements returns
+     * them
+     */
+    private static class Result {
+        private int width;
+        private int height;
+        private int type;
+        private Object data;
+        private boolean buffer;
+
+        private Result(int width, int height, int type, Object data, boolean buffer) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.data = data;
+            this.buffer = buffer;
+        }
+
+        private long getBytes() {
+
+            // the object and the array's header, then the elements
+            long bytes = 48;
+            if (data instanceof int[]) {
+                bytes += 4L * ((int[]) data).length;
+            } else if (data instanceof short[]) {
+                bytes += 2L * ((short[]) data).length;
+            } else {
+                bytes += ((byte[]) data).length;
+            }
+            return bytes;
+        }
+    }
+
+    /*
+     * A cache with only the memory tier
+     */
+    protected ResultCache(MLAAEngine engine, long maximumBytes) {
+        this(engine, maximumBytes, null, 0);
+    }
+
+    /*
+     * Results are kept by a hash of the image and the engine's options, so an engine blending
+     * with other weights needs a cache (and directory) of its own.
+     *
+     * @param maximumBytes most memory the results in the memory tier may take up together
+     * @param directory where the disk tier keeps its files, or null for no disk tier
+     * @param maximumDiskBytes most space the files of the disk tier may take up together
+     */
+    protected ResultCache(MLAAEngine engine, long maximumBytes, Path directory, long maximumDiskBytes) {
+        this.engine = engine;
+        this.maximumBytes = maximumBytes;
+        this.directory = directory;
+        this.maximumDiskBytes = maximumDiskBytes;
+    }
+
+    /*
+     * Same as algorithm(), but an image with the same pixels, size and type as one seen before
+     * gets the stored result copied into it instead of going through MLAA again. Results are
+     * looked for in memory first, then on disk; a new result is stored in both.
+     *
+     * @return image, with MLAA
+     */
+    protected BufferedImage algorithm(BufferedImage image) throws IOException {
+
+        long key = key(image);
+        Result result = get(key);
+        if (result == null && directory != null) {
+            result = read(key);
+            if (result != null) {
+                countDiskHit();
+                put(key, result);
+            }
+        }
+        if (result != null && result.width == image.getWidth() && result.height == image.getHeight()
+                && result.type == image.getType() && copyInto(result, image)) {
+            return image;
+        }
+
+        countMiss();
+        engine.algorithm(image);
+        Object data = ContentHash.getData(image);
+        if (data != null) {
+            result = new Result(image.getWidth(), image.getHeight(), image.getType(), copy(data), true);
+        } else {
+            result = new Result(image.getWidth(), image.getHeight(), image.getType(),
+                    image.getRaster().getDataElements(0, 0, image.getWidth(), image.getHeight(), null), false);
+        }
+        put(key, result);
+        if (directory != null) {
+            write(key, result);
+        }
+        return image;
+    }
+
+    protected synchronized long getHits() {
+        return hits;
+    }
+
+    /*
+     * @return results found on disk but not in memory
+     */
+    protected synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    protected synchronized long getMisses() {
+        return misses;
+    }
+
+    /*
+     * @return results dropped from memory to stay under the byte budget
+     */
+    protected synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /*
+     * @return files deleted from disk to stay under the byte budget
+     */
+    protected synchronized long getDiskEvictions() {
+        return diskEvictions;
+    }
+
+    /*
+     * @return memory the results in the memory tier take up
+     */
+    protected synchronized long getBytes() {
+        return bytes;
+    }
+
+    /*
+     * @return the key the result of an image is kept under: the image's content hash mixed with
+     * the engine's options
+     */
+    private long key(BufferedImage image) {
+        return engine.getOptions().hash(ContentHash.hash(image));
+    }
+
+    private synchronized Result get(long key) {
+
+        Result result = results.get(key);
+        if (result != null) {
+            hits++;
+        }
+        return result;
+    }
+
+    private synchronized void put(long key, Result result) {
+
+        if (result.getBytes() > maximumBytes) {
+            return;
+        }
+        Result old = results.put(key, result);
+        if (old != null) {
+            bytes -= old.getBytes();
+        }
+        bytes += result.getBytes();
+
+        Iterator<Map.Entry<Long, Result>> it = results.entrySet().iterator();
+        while (bytes > maximumBytes && it.hasNext()) {
+            bytes -= it.next().getValue().getBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized void countDiskHit() {
+        diskHits++;
+    }
+
+    private synchronized void countMiss() {
+        misses++;
+    }
+
+    /*
+     * Copies a stored result into the image
+     *
+     * @return false if the result doesn't fit the image's raster, which is then left alone
+     */
+    private static boolean copyInto(Result result, BufferedImage image) {
+
+        if (result.buffer) {
+            Object data = ContentHash.getData(image);
+            if (data == null || data.getClass() != result.data.getClass() || length(data) != length(result.data)) {
+                return false;
+            }
+            System.arraycopy(result.data, 0, data, 0, length(data));
+            return true;
+        }
+
+        WritableRaster raster = image.getRaster();
+        Object elements = raster.getDataElements(0, 0, null);
+        int size = result.width * result.height * raster.getNumDataElements();
+        if (elements.getClass() != result.data.getClass() || length(result.data) != size) {
+            return false;
+        }
+        raster.setDataElements(0, 0, result.width, result.height, result.data);
+        return true;
+    }
+
+    private static Object copy(Object data) {
+
+        if (data instanceof int[]) {
+            return ((int[]) data).clone();
+        } else if (data instanceof short[]) {
+            return ((short[]) data).clone();
+        }
+        return ((byte[]) data).clone();
+    }
+
+    private static int length(Object data) {
+
+        if (data instanceof int[]) {
+            return ((int[]) data).length;
+        } else if (data instanceof short[]) {
+            return ((short[]) data).length;
+        }
+        return ((byte[]) data).length;
+    }
+
+    private Path file(long key) {
+        return directory.resolve(String.format(Locale.ROOT, "%016x%s", key, SUFFIX));
+    }
+
+    /*
+     * @return the result stored on disk under key, or null if there is none or it can't be read
+     */
+    private Result read(long key) {
+
+        Path path = file(key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (InputStream stream = Files.newInputStream(path)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int type = in.readInt();
+            boolean buffer = in.readInt() != 0;
+            int kind = in.readInt();
+            int length = in.readInt();
+            if (width < 0 || height < 0 || length < 0 || length > Files.size(path)) {
+                return null;
+            }
+
+            Object data;
+            if (kind == INT_DATA) {
+                int[] ints = new int[length];
+                for (int i = 0; i < length; i++) {
+                    ints[i] = in.readInt();
+                }
+                data = ints;
+            } else if (kind == SHORT_DATA) {
+                short[] shorts = new short[length];
+                for (int i = 0; i < length; i++) {
+                    shorts[i] = in.readShort();
+                }
+                data = shorts;
+            } else if (kind == BYTE_DATA) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                data = bytes;
+            } else {
+                return null;
+            }
+            return new Result(width, height, type, data, buffer);
+        } catch (IOException e) {
+            // a file that is broken or was deleted under us is just a miss
+            return null;
+        }
+    }
+
+    /*
+     * Stores a result on disk, then deletes the oldest files until the disk tier is under its
+     * budget again. The file is written under a temporary name and moved into place, so other
+     * processes sharing the directory never see half a file.
+     */
+    private void write(long key, Result result) throws IOException {
+
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "result", ".tmp");
+        long added;
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(result.width);
+                out.writeInt(result.height);
+                out.writeInt(result.type);
+                out.writeInt(result.buffer ? 1 : 0);
+                if (result.data instanceof int[]) {
+                    int[] ints = (int[]) result.data;
+                    out.writeInt(INT_DATA);
+                    out.writeInt(ints.length);
+                    for (int value : ints) {
+                        out.writeInt(value);
+                    }
+                } else if (result.data instanceof short[]) {
+                    short[] shorts = (short[]) result.data;
+                    out.writeInt(SHORT_DATA);
+                    out.writeInt(shorts.length);
+                    for (short value : shorts) {
+                        out.writeShort(value);
+                    }
+                } else {
+                    byte[] bytes = (byte[]) result.data;
+                    out.writeInt(BYTE_DATA);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.flush();
+            }
+            Path path = file(key);
+            long replaced = Files.isRegularFile(path) ? Files.size(path) : 0;
+            added = Files.size(temporary) - replaced;
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        if (addDiskBytes(added) > maximumDiskBytes) {
+            trimDirectory();
+        }
+    }
+
+    /*
+     * Adds to the space the disk tier takes up, counting the files already there the first time
+     *
+     * @return the space the disk tier takes up now
+     */
+    private synchronized long addDiskBytes(long added) throws IOException {
+
+        if (diskBytes < 0) {
+            // the file just written is counted by the listing already
+            diskBytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path path : stream) {
+                    diskBytes += Files.size(path);
+                }
+            }
+            return diskBytes;
+        }
+        diskBytes += added;
+        return diskBytes;
+    }
+
+    /*
+     * Deletes result files, least recently written first, until they fit in the disk budget.
+     * Other processes sharing the directory may have written or deleted files, so the files are
+     * counted again here and the count kept from then on.
+     */
+    private void trimDirectory() throws IOException {
+
+        List<Path> files = new ArrayList<Path>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                files.add(path);
+                total += Files.size(path);
+            }
+        }
+        if (total > maximumDiskBytes) {
+            files.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+            for (Path path : files) {
+                if (total <= maximumDiskBytes) {
+                    break;
+                }
+                long size = Files.size(path);
+                if (Files.deleteIfExists(path)) {
+                    total -= size;
+                    synchronized (this) {
+                        diskEvictions++;
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            diskBytes = total;
+        }
+    }
+
+    /*
+     * Runs every image in a directory through the cache twice and reports how long each pass
+     * took and what the cache did.
+     *
+     * Usage: java ResultCache <image directory> [cache directory]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println("Usage: java ResultCache <image directory> [cache directory]");
+            System.exit(1);
+        }
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        if (files == null) {
+            throw new IllegalArgumentException("can't list " + args[0]);
+        }
+        Path directory = args.length > 1 ? Paths.get(args[1]) : null;
+        ResultCache cache = new ResultCache(new MLAAEngine(50), DEFAULT_MAXIMUM_BYTES, directory,
+                DEFAULT_MAXIMUM_BYTES * 4);
+
+        for (int pass = 1; pass <= 2; pass++) {
+            long nanos = 0;
+            int images = 0;
+            for (File file : files) {
+                BufferedImage image = ImageIO.read(file);
+                if (image == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                cache.algorithm(image);
+                nanos += System.nanoTime() - start;
+                images++;
+            }
+            System.out.println(String.format(Locale.ROOT,
+                    "pass %d: %d images, %.1f us per image, %d hits, %d disk hits, %d misses, %d evictions", pass,
+                    images, nanos / 1e3 / Math.max(1, images), cache.getHits(), cache.getDiskHits(),
+                    cache.getMisses(), cache.getEvictions()));
+        }
+    }
+}
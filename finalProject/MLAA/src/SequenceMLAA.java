@@ -0,0 +1,255 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+public class SequenceMLAA {
+
+    // tiles are compared with the last frame this many pixels on a side by default
+    protected static final int DEFAULT_TILE_SIZE = 64;
+
+    private MLAAEngine engine;
+    // brings the last result up to date around the changed tiles
+    private IncrementalMLAA incremental;
+    private int tileSize;
+    // context a recomputed region is expected to need around it, and how far a change is
+    // expected to reach (see StreamingMLAA.halo); only used to guess what a region costs
+    private int halo;
+
+    private int width;
+    private int height;
+    // the last frame as it came in, and with MLAA, both TYPE_INT_ARGB, with their pixels
+    private BufferedImage previousImage;
+    private BufferedImage resultImage;
+    private int[] previousFrame;
+    private int[] previousResult;
+    // the frame being worked on; swapped with previousFrame once it is done
+    private BufferedImage currentImage;
+    private int[] currentFrame;
+
+    // what the last frame cost, for reports
+    private int dirtyTiles;
+    private int tiles;
+    private long recomputedPixels;
+
+    protected SequenceMLAA() {
+        this(50, StreamingMLAA.DEFAULT_MAXIMUM_PATTERN_LENGTH, DEFAULT_TILE_SIZE);
+    }
+
+    /*
+     * @param maximumPatternLength longest pattern a recomputed region is sized for at first; a
+     * region a longer pattern runs out of is made bigger until it holds it
+     * @param tileSize size of the tiles compared with the last frame
+     */
+    protected SequenceMLAA(int strength, int maximumPatternLength, int tileSize) {
+        this.engine = new MLAAEngine(strength);
+        this.tileSize = tileSize;
+        this.halo = StreamingMLAA.halo(maximumPatternLength);
+        this.incremental = new IncrementalMLAA(strength, halo);
+    }
+
+    /*
+     * Runs MLAA over the next frame of a sequence. The frame is compared with the last one tile
+     * by tile, and only what the tiles that changed can reach is recomputed (see
+     * IncrementalMLAA.update); the rest of the result is the last frame's. The first frame, a
+     * frame of a different size, or one where so much changed that recomputing regions would cost
+     * more than the whole frame, is done in one full pass.
+     *
+     * The result is the same as algorithm() on a TYPE_INT_ARGB copy of the frame, however long
+     * the patterns crossing from a changed region into an unchanged one are.
+     *
+     * @return frame, with MLAA
+     */
+    protected BufferedImage next(BufferedImage frame) {
+
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        if (previousFrame == null || frameWidth != width || frameHeight != height) {
+            width = frameWidth;
+            height = frameHeight;
+            previousImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            resultImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            currentImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            previousFrame = pixels(previousImage);
+            previousResult = pixels(resultImage);
+            currentFrame = pixels(currentImage);
+            tiles = ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+            dirtyTiles = tiles;
+            recomputedPixels = 0;
+            frame.getRGB(0, 0, width, height, currentFrame, 0, width);
+            recomputeAll();
+        } else {
+            frame.getRGB(0, 0, width, height, currentFrame, 0, width);
+            recomputeChanged();
+        }
+
+        BufferedImage swapImage = previousImage;
+        previousImage = currentImage;
+        currentImage = swapImage;
+        int[] swap = previousFrame;
+        previousFrame = currentFrame;
+        currentFrame = swap;
+
+        frame.setRGB(0, 0, width, height, previousResult, 0, width);
+        return frame;
+    }
+
+    /*
+     * @return number of tiles that changed in the last frame
+     */
+    protected int getDirtyTiles() {
+        return dirtyTiles;
+    }
+
+    /*
+     * @return number of tiles in the last frame
+     */
+    protected int getTiles() {
+        return tiles;
+    }
+
+    /*
+     * @return number of pixels MLAA ran over for the last frame, counting overlaps between regions
+     */
+    protected long getRecomputedPixels() {
+        return recomputedPixels;
+    }
+
+    private void recomputeAll() {
+
+        System.arraycopy(currentFrame, 0, previousResult, 0, previousResult.length);
+        engine.algorithm(resultImage);
+        recomputedPixels += previousResult.length;
+    }
+
+    private void recomputeChanged() {
+
+        int tilesAcross = (width + tileSize - 1) / tileSize;
+        int tilesDown = (height + tileSize - 1) / tileSize;
+        boolean[] dirty = new boolean[tilesAcross * tilesDown];
+        tiles = dirty.length;
+        dirtyTiles = 0;
+        recomputedPixels = 0;
+
+        for (int tileY = 0; tileY < tilesDown; tileY++) {
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                if (isDirty(tileX, tileY)) {
+                    dirty[tileY * tilesAcross + tileX] = true;
+                    dirtyTiles++;
+                }
+            }
+        }
+        if (dirtyTiles == 0) {
+            return;
+        }
+
+        // each run of changed tiles in a row of tiles becomes one region. If the regions together
+        // with the context they are expected to need cover more than the frame, one full pass is
+        // cheaper.
+        List<Rectangle> regions = new ArrayList<Rectangle>();
+        long work = 0;
+        for (int tileY = 0; tileY < tilesDown; tileY++) {
+            for (int tileX = 0; tileX < tilesAcross; tileX++) {
+                if (dirty[tileY * tilesAcross + tileX]) {
+                    int end = tileX;
+                    while (end < tilesAcross && dirty[tileY * tilesAcross + end]) {
+                        end++;
+                    }
+                    int left = tileX * tileSize;
+                    int top = tileY * tileSize;
+                    int right = Math.min(width, end * tileSize);
+                    int bottom = Math.min(height, (tileY + 1) * tileSize);
+                    regions.add(new Rectangle(left, top, right - left, bottom - top));
+                    work += windowArea(left, top, right, bottom);
+                    tileX = end;
+                }
+            }
+        }
+        if (work >= (long) width * height) {
+            recomputeAll();
+            return;
+        }
+
+        incremental.update(resultImage, currentImage, regions);
+        recomputedPixels = incremental.getRecomputedPixels();
+    }
+
+    /*
+     * @return true if any pixel of the tile differs from the last frame
+     */
+    private boolean isDirty(int tileX, int tileY) {
+
+        int left = tileX * tileSize;
+        int right = Math.min(width, left + tileSize);
+        int bottom = Math.min(height, (tileY + 1) * tileSize);
+        for (int y = tileY * tileSize; y < bottom; y++) {
+            int row = y * width;
+            if (!Arrays.equals(currentFrame, row + left, row + right, previousFrame, row + left, row + right)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * @return pixels MLAA runs over to recompute the changed pixels from (left, top) to (right,
+     * bottom), exclusive, if the first window around them is big enough
+     */
+    private long windowArea(int left, int top, int right, int bottom) {
+
+        long across = Math.min(width, right + halo) - Math.max(0, left - halo);
+        long down = Math.min(height, bottom + halo) - Math.max(0, top - halo);
+        return across * down;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /*
+     * Runs MLAA over every image in a directory, in name order, as frames of one sequence, and
+     * writes the results as PNGs with the same names into the output directory.
+     *
+     * Usage: java SequenceMLAA <input directory> <output directory> [tile size]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.err.println("Usage: java SequenceMLAA <input directory> <output directory> [tile size]");
+            System.exit(1);
+        }
+        int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+        File outputDirectory = new File(args[1]);
+        outputDirectory.mkdirs();
+
+        File[] files = new File(args[0]).listFiles(File::isFile);
+        if (files == null) {
+            throw new IllegalArgumentException("can't list " + args[0]);
+        }
+        Arrays.sort(files);
+
+        SequenceMLAA sequence = new SequenceMLAA(50, StreamingMLAA.DEFAULT_MAXIMUM_PATTERN_LENGTH, tileSize);
+        for (File file : files) {
+            BufferedImage frame = ImageIO.read(file);
+            if (frame == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            sequence.next(frame);
+            double milliseconds = (System.nanoTime() - start) / 1e6;
+
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            ImageIO.write(frame, "png", new File(outputDirectory, (dot > 0 ? name.substring(0, dot) : name) + ".png"));
+            System.out.println(String.format(Locale.ROOT, "%s: %d of %d tiles changed, %.1f%% recomputed, %.1f ms",
+                    name, sequence.getDirtyTiles(), sequence.getTiles(),
+                    100.0 * sequence.getRecomputedPixels() / ((long) frame.getWidth() * frame.getHeight()),
+                    milliseconds));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+public class StreamingMLAA {
+
+    /*
+     * Where the rows of the image come from, top to bottom
+     */
+    protected interface RowSource {
+
+        int getWidth();
+
+        int getHeight();
+
+        /*
+         * Reads the rows from y (inclusive) to y + rows (exclusive) as packed ARGB into pixels,
+         * row by row, starting at offset. Rows are asked for in order and each one only once.
+         */
+        void readRows(int y, int rows, int[] pixels, int offset) throws IOException;
+    }
+
+    /*
+     * Where the finished rows go, top to bottom
+     */
+    protected interface RowSink {
+
+        /*
+         * Takes the rows from y (inclusive) to y + rows (exclusive), as packed ARGB row by row
+         * starting at offset. The array is reused once this returns.
+         */
+        void writeRows(int y, int rows, int[] pixels, int offset) throws IOException;
+    }
+
+    // patterns are cut off at this length, so the window only has to hold this many rows around
+    // a band
+    protected static final int DEFAULT_MAXIMUM_PATTERN_LENGTH = 64;
+    // rows finished per step; the window holds these plus the rows around them
+    protected static final int DEFAULT_BAND_HEIGHT = 256;
+    // rows of horizontal patterns, each blended towards the next, the halo allows for
+    private static final int STACKED_ROWS = 8;
+
+    private MLAAEngine engine;
+    private int bandHeight;
+    // rows read above and below each band so the patterns reaching into it are seen whole
+    private int halo;
+    // the image the engine runs on, kept for the next band of the same height
+    private BufferedImage window;
+
+    /*
+     * @param maximumPatternLength longest a pattern is followed (see
+     * MLAAOptions.withMaximumRunLength); the window is sized for it
+     * @param bandHeight rows finished per step
+     */
+    protected StreamingMLAA(int strength, int maximumPatternLength, int bandHeight) {
+
+        this.engine = new MLAAEngine(
+                MLAAOptions.DEFAULT.withStrength(strength).withMaximumRunLength(maximumPatternLength),
+                new BlendWeights());
+        this.bandHeight = bandHeight;
+        this.halo = halo(maximumPatternLength);
+    }
+
+    /*
+     * @return options the bands are blended with; algorithm() with these on the whole image gives
+     * the same result
+     */
+    protected MLAAOptions getOptions() {
+        return engine.getOptions();
+    }
+
+    /*
+     * A pixel's blended value depends on the pixels around it out to this distance when patterns
+     * are cut off at maximumPatternLength: a pattern reaching the pixel is followed to its end
+     * and its neighbours are read, blending half of it reaches (maximumPatternLength + 1) / 2
+     * further, and the horizontal patterns each read the row above or below. That row may have
+     * been blended by a horizontal pattern of its own first, so a change can travel a row further
+     * for every pattern stacked on the next; STACKED_ROWS more rows allow for such stacks.
+     *
+     * @return rows or columns of context a window needs around the pixels it finishes
+     */
+    protected static int halo(int maximumPatternLength) {
+        return maximumPatternLength + (maximumPatternLength + 1) / 2 + 1 + STACKED_ROWS;
+    }
+
+    /*
+     * Runs MLAA over an image that doesn't have to fit in memory. The rows are read a band at a
+     * time; each band is blended together with halo rows above and below it, and only the band
+     * itself is written out. Memory stays proportional to width * (band height + 2 * halo), no
+     * matter how tall the image is.
+     *
+     * Patterns are cut off at the maximum pattern length, so the result is the same as
+     * algorithm() with getOptions() on a TYPE_INT_ARGB copy of the image, whatever the band
+     * height; RegressionMLAA checks that it is. Only horizontal patterns stacked row upon row for
+     * more than STACKED_ROWS rows across the edge of a window could still carry a change further
+     * than the halo.
+     */
+    protected void process(RowSource source, RowSink sink) throws IOException {
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // the original pixels of the rows from windowTop to windowBottom. Bands overlap, and every
+        // band has to start from pixels nothing has been blended into yet.
+        int[] original = new int[width * Math.min(height, bandHeight + 2 * halo)];
+        int windowTop = 0;
+        int windowBottom = 0;
+
+        for (int bandTop = 0; bandTop < height; bandTop += bandHeight) {
+            int bandBottom = Math.min(height, bandTop + bandHeight);
+            int top = Math.max(0, bandTop - halo);
+            int bottom = Math.min(height, bandBottom + halo);
+
+            // keep the rows this window shares with the last one, and read only the new ones
+            int kept = Math.max(0, windowBottom - top);
+            System.arraycopy(original, (top - windowTop) * width, original, 0, kept * width);
+            source.readRows(top + kept, bottom - top - kept, original, kept * width);
+            windowTop = top;
+            windowBottom = bottom;
+
+            BufferedImage image = getWindow(width, bottom - top);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            System.arraycopy(original, 0, pixels, 0, width * (bottom - top));
+            engine.algorithm(image);
+
+            sink.writeRows(bandTop, bandBottom - bandTop, pixels, (bandTop - top) * width);
+        }
+    }
+
+    /*
+     * Streams an image from a file through MLAA into another file. The output is written a band
+     * at a time, which needs a format that can be, such as TIFF. The input is read a band at a
+     * time through ImageReader source regions; formats like TIFF read just the rows asked for.
+     *
+     * Usage: java StreamingMLAA <input image> <output image> [maximum pattern length] [band height]
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: java StreamingMLAA <input image> <output image> [maximum pattern length] [band height]");
+            System.exit(1);
+        }
+        int maximumPatternLength = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAXIMUM_PATTERN_LENGTH;
+        int bandHeight = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BAND_HEIGHT;
+
+        File output = new File(args[1]);
+        String name = output.getName();
+        String format = name.substring(name.lastIndexOf('.') + 1);
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(args[0]));
+                ImageOutputStream out = ImageIO.createImageOutputStream(output)) {
+            if (in == null) {
+                throw new IOException("can't open " + args[0]);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+            if (!readers.hasNext()) {
+                throw new IOException("no ImageReader for " + args[0]);
+            }
+            if (!writers.hasNext()) {
+                throw new IOException("no ImageWriter for " + format);
+            }
+
+            ImageReader reader = readers.next();
+            ImageWriter writer = writers.next();
+            try {
+                reader.setInput(in, true, true);
+                writer.setOutput(out);
+
+                ReaderSource source = new ReaderSource(reader);
+                boolean alpha = reader.getImageTypes(0).next().getColorModel().hasAlpha();
+                WriterSink sink = new WriterSink(writer, source.getWidth(), source.getHeight(), alpha);
+
+                long start = System.nanoTime();
+                new StreamingMLAA(50, maximumPatternLength, bandHeight).process(source, sink);
+                sink.finish();
+                System.out.println(String.format(Locale.ROOT, "%dx%d in %.2f s", source.getWidth(), source.getHeight(),
+                        (System.nanoTime() - start) / 1e9));
+            } finally {
+                reader.dispose();
+                writer.dispose();
+            }
+        }
+    }
+
+    /*
+     * @return TYPE_INT_ARGB image of the given size, the same one as last time if it fits
+     */
+    private BufferedImage getWindow(int width, int height) {
+
+        if (window == null || window.getWidth() != width || window.getHeight() != height) {
+            window = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return window;
+    }
+
+    /*
+     * Reads the rows from an ImageReader, one source region at a time
+     */
+    protected static class ReaderSource implements RowSource {
+
+        private ImageReader reader;
+        private int width;
+        private int height;
+
+        protected ReaderSource(ImageReader reader) throws IOException {
+            this.reader = reader;
+            this.width = reader.getWidth(0);
+            this.height = reader.getHeight(0);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void readRows(int y, int rows, int[] pixels, int offset) throws IOException {
+
+            if (rows == 0) {
+                return;
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, y, width, rows));
+            BufferedImage band = reader.read(0, param);
+            band.getRGB(0, 0, width, rows, pixels, offset, width);
+        }
+    }
+
+    /*
+     * Writes the rows through an ImageWriter that can fill in an empty image a piece at a time
+     */
+    protected static class WriterSink implements RowSink {
+
+        private ImageWriter writer;
+        private int width;
+        private int type;
+        // band sized image the rows are converted into before being written
+        private BufferedImage band;
+
+        protected WriterSink(ImageWriter writer, int width, int height, boolean alpha) throws IOException {
+
+            if (!writer.canWriteEmpty()) {
+                throw new IOException(writer.getOriginatingProvider().getFormatNames()[0]
+                        + " can't be written a band at a time; use a format like TIFF");
+            }
+            this.writer = writer;
+            this.width = width;
+            this.type = alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            writer.prepareWriteEmpty(null, ImageTypeSpecifier.createFromBufferedImageType(type), width, height,
+                    null, null, null);
+        }
+
+        @Override
+        public void writeRows(int y, int rows, int[] pixels, int offset) throws IOException {
+
+            if (band == null || band.getHeight() != rows) {
+                band = new BufferedImage(width, rows, type);
+            }
+            band.setRGB(0, 0, width, rows, pixels, offset, width);
+
+            writer.prepareReplacePixels(0, new Rectangle(0, y, width, rows));
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setDestinationOffset(new Point(0, y));
+            writer.replacePixels(band.getRaster(), param);
+            writer.endReplacePixels();
+        }
+
+        /*
+         * Finishes the image once every row has been written
+         */
+        protected void finish() throws IOException {
+            writer.endWriteEmpty();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class StripTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // strips are never split below this many rows or columns
+    private static final int MINIMUM_STRIP = 16;
+
+    /*
+     * Work done on the rows or columns from (inclusive) to (exclusive)
+     */
+    protected interface Strip {
+        void run(int from, int to);
+    }
+
+    private Strip strip;
+    private int from;
+    private int to;
+    private int grain;
+
+    private StripTask(Strip strip, int from, int to, int grain) {
+        this.strip = strip;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    /*
+     * Splits 0 to length into strips, runs them on the pool and waits for all of them to finish.
+     * Everything a strip wrote is visible once this returns.
+     */
+    protected static void run(ForkJoinPool pool, int length, Strip strip) {
+
+        if (length <= 0) {
+            return;
+        }
+        // a few strips per thread so a strip full of patterns doesn't hold everyone up
+        int grain = Math.max(MINIMUM_STRIP, length / (pool.getParallelism() * 4));
+        pool.invoke(new StripTask(strip, 0, length, grain));
+    }
+
+    @Override
+    protected void compute() {
+
+        if (to - from <= grain) {
+            strip.run(from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new StripTask(strip, from, middle, grain), new StripTask(strip, middle, to, grain));
+    }
+}
@@ -0,0 +1,320 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+public class WorkerMLAA {
+
+    // rounds of synthetic jobs run before the first real one, by default; by then the detection
+    // and blending loops have been compiled by C2
+    private static final int WARM_UP_ROUNDS = 4;
+    // sides of the synthetic images, big enough that every loop runs long
+    private static final int WARM_UP_SIZE = 512;
+
+    private MLAAEngine engine = new MLAAEngine(50);
+
+    /*
+     * Keeps one JVM running and anti-aliases image files as they are asked for, so a job costs
+     * only the MLAA work instead of JVM startup, class loading and time in the interpreter.
+     * Before taking jobs the worker runs synthetic ones, so the first real job already gets
+     * compiled code.
+     *
+     * A job is one line: the input file, the output file and optionally options in the form
+     * strength=30&blend=accumulate (see MLAAOptions.withParameter), separated by tabs. Files
+     * ending in .raw are raw frames (see RawFrame); anything else is read or written through
+     * ImageIO. Every job is answered with one line, "ok <width>x<height> <milliseconds>" or
+     * "error <message>". Jobs come from stdin with answers on stdout, or, with --socket, from
+     * any number of connections to a Unix domain socket.
+     *
+     * For launches that can't use a worker, --create-archive runs the warm up in a new JVM that
+     * writes every class it loaded (AWT and ImageIO included) to an AppCDS archive, e.g.
+     *
+     *     mvn package
+     *     java --add-modules jdk.incubator.vector -cp target/mlaa-1.0-SNAPSHOT.jar WorkerMLAA \
+     *         --create-archive target/mlaa.jsa
+     *     java -XX:SharedArchiveFile=target/mlaa.jsa --add-modules jdk.incubator.vector \
+     *         -cp target/mlaa-1.0-SNAPSHOT.jar RawMLAA frame.raw
+     *
+     * The archive only works with the same JVM and class path it was made with. Classes loaded
+     * from a directory rather than a jar are left out of it.
+     *
+     * Usage: java WorkerMLAA [--socket <path>] [--warm-up <rounds>]
+     *        java WorkerMLAA --create-archive <archive>
+     */
+    public static void main(String[] args) throws Exception {
+
+        Path socket = null;
+        Path archive = null;
+        int rounds = WARM_UP_ROUNDS;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--socket") && i + 1 < args.length) {
+                    socket = Paths.get(args[++i]);
+                } else if (args[i].equals("--warm-up") && i + 1 < args.length) {
+                    rounds = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--create-archive") && i + 1 < args.length) {
+                    archive = Paths.get(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: java WorkerMLAA [--socket <path>] [--warm-up <rounds>]");
+            System.err.println("       java WorkerMLAA --create-archive <archive>");
+            System.exit(1);
+        }
+
+        if (archive != null) {
+            System.exit(createArchive(archive, rounds));
+        }
+
+        WorkerMLAA worker = new WorkerMLAA();
+        // stdout carries the answers, so everything else goes to stderr
+        long start = System.nanoTime();
+        int jobs = worker.warmUp(rounds);
+        System.err.println(String.format(Locale.ROOT, "warmed up with %d jobs in %.1f ms", jobs,
+                (System.nanoTime() - start) / 1e6));
+
+        if (socket != null) {
+            worker.listen(socket);
+        } else {
+            worker.serve(System.in, System.out);
+        }
+    }
+
+    /*
+     * Answers jobs line by line until the input ends
+     */
+    private void serve(InputStream in, OutputStream out) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String answer;
+            try {
+                answer = run(line);
+            } catch (IOException | RuntimeException e) {
+                // one line per answer, whatever the message holds
+                answer = "error " + String.valueOf(e.getMessage()).replace('\n', ' ');
+            }
+            writer.println(answer);
+            writer.flush();
+        }
+    }
+
+    /*
+     * Serves every connection to the socket on a thread of its own. The engine is shared, so
+     * jobs from different connections run at the same time.
+     */
+    private void listen(Path path) throws IOException {
+
+        Files.deleteIfExists(path);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(path));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // nothing left to do about it
+                }
+            }));
+            System.err.println("listening on " + path);
+
+            while (true) {
+                SocketChannel connection = server.accept();
+                Thread thread = new Thread(() -> {
+                    try (SocketChannel channel = connection) {
+                        serve(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+                    } catch (IOException e) {
+                        System.err.println("connection failed: " + e.getMessage());
+                    }
+                }, "worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /*
+     * Does one job
+     *
+     * @return the answer to it
+     */
+    private String run(String line) throws IOException {
+
+        String[] fields = line.split("\t");
+        if (fields.length < 2 || fields.length > 3) {
+            throw new IllegalArgumentException("a job is <input>\\t<output>[\\t<options>]");
+        }
+        MLAAOptions options = engine.getOptions();
+        if (fields.length > 2 && !fields[2].isEmpty()) {
+            for (String parameter : fields[2].split("&")) {
+                int equals = parameter.indexOf('=');
+                options = equals < 0 ? options.withParameter(parameter, "")
+                        : options.withParameter(parameter.substring(0, equals), parameter.substring(equals + 1));
+            }
+        }
+        Path input = Paths.get(fields[0]);
+        Path output = Paths.get(fields[1]);
+
+        long start = System.nanoTime();
+        int width;
+        int height;
+        if (RawFrame.isRaw(input) && RawFrame.isRaw(output)) {
+            // blended in place in the output file, like RawMLAA
+            Files.copy(input, output, StandardCopyOption.REPLACE_EXISTING);
+            RawFrame frame = RawFrame.open(output, true);
+            engine.algorithm(frame, options, null);
+            frame.force();
+            width = frame.getWidth();
+            height = frame.getHeight();
+        } else {
+            BufferedImage image = RawFrame.isRaw(input) ? RawFrame.open(input, false).toImage()
+                    : ImageIO.read(input.toFile());
+            if (image == null) {
+                throw new IOException("can't read " + input);
+            }
+            engine.algorithm(image, options);
+            write(image, output);
+            width = image.getWidth();
+            height = image.getHeight();
+        }
+        return String.format(Locale.ROOT, "ok %dx%d %.2f", width, height, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void write(BufferedImage image, Path output) throws IOException {
+
+        if (RawFrame.isRaw(output)) {
+            RawFrame.fromImage(image, output, RawFrame.BGRA).force();
+            return;
+        }
+        String name = output.getFileName().toString();
+        if (!ImageIO.write(image, name.substring(name.lastIndexOf('.') + 1), output.toFile())) {
+            throw new IOException("no ImageWriter for " + name);
+        }
+    }
+
+    /*
+     * Runs synthetic jobs through the same code real ones take: opaque and translucent PNGs and
+     * raw frames, with stairs, checkerboard squares and noise, i.e. long runs, short runs and
+     * runs starting everywhere.
+     *
+     * @return number of jobs run
+     */
+    private int warmUp(int rounds) throws IOException {
+
+        if (rounds <= 0) {
+            return 0;
+        }
+        Path directory = Files.createTempDirectory("mlaa-warm-up");
+        try {
+            List<String> jobs = new ArrayList<String>();
+            for (int kind = 0; kind < 3; kind++) {
+                BufferedImage opaque = warmUpImage(kind, BufferedImage.TYPE_3BYTE_BGR);
+                BufferedImage translucent = warmUpImage(kind, BufferedImage.TYPE_INT_ARGB);
+                jobs.add(warmUpJob(directory, kind + "-opaque.png", opaque));
+                jobs.add(warmUpJob(directory, kind + "-translucent.png", translucent));
+                jobs.add(warmUpJob(directory, kind + ".raw", translucent));
+            }
+            for (int round = 0; round < rounds; round++) {
+                for (String job : jobs) {
+                    run(job);
+                }
+            }
+            return rounds * jobs.size();
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static String warmUpJob(Path directory, String name, BufferedImage image) throws IOException {
+
+        Path input = directory.resolve(name);
+        write(image, input);
+        return input + "\t" + directory.resolve("out-" + name);
+    }
+
+    /*
+     * @return a synthetic image: 0 stairs, 1 checkerboard or 2 noise
+     */
+    private static BufferedImage warmUpImage(int kind, int type) {
+
+        BufferedImage image = new BufferedImage(WARM_UP_SIZE, WARM_UP_SIZE, type);
+        Random random = new Random(kind);
+        int[] row = new int[WARM_UP_SIZE];
+        for (int y = 0; y < WARM_UP_SIZE; y++) {
+            for (int x = 0; x < WARM_UP_SIZE; x++) {
+                int value;
+                if (kind == 0) {
+                    value = (((y + x / (3 + x / 128 * 7)) / 24) & 1) == 0 ? 0x283C1E : 0xC8DCD2;
+                } else if (kind == 1) {
+                    value = (((x >> 3) + (y >> 3)) & 1) == 0 ? 0 : 0xFFFFFF;
+                } else {
+                    value = random.nextInt(0x1000000);
+                }
+                row[x] = (random.nextInt(256) << 24) | value;
+            }
+            image.setRGB(0, y, WARM_UP_SIZE, 1, row, 0, WARM_UP_SIZE);
+        }
+        return image;
+    }
+
+    /*
+     * Runs a worker in a new JVM that warms up, finds no jobs and writes every class it loaded to
+     * the archive on the way out. The new JVM gets the same options and class path as this one.
+     *
+     * @return exit code of the new JVM
+     */
+    private static int createArchive(Path archive, int rounds) throws IOException, InterruptedException {
+
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!argument.startsWith("-XX:SharedArchiveFile") && !argument.startsWith("-XX:ArchiveClassesAtExit")) {
+                command.add(argument);
+            }
+        }
+        command.add("-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WorkerMLAA.class.getName());
+        command.add("--warm-up");
+        command.add(String.valueOf(rounds));
+
+        Process process = new ProcessBuilder(command).redirectInput(ProcessBuilder.Redirect.from(new File(
+                System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null")))
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT).redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        return process.waitFor();
+    }
+}
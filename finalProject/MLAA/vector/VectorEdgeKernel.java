@@ -0,0 +1,129 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * EdgeKernel on the incubating Vector API: the luminance and the edge bits of a whole vector of
+ * pixels are computed at once. Only compiled and loaded when jdk.incubator.vector is there
+ * (javac and java both need --add-modules jdk.incubator.vector); EdgeKernel.getDefault picks it
+ * up by name and falls back to the scalar kernel otherwise.
+ *
+ * The edge bits are identical to the scalar kernel's. Where a difference lands exactly on the
+ * strength the scalar kernel settles it with the original double arithmetic, and so does this
+ * one, for the whole vector of pixels.
+ */
+public class VectorEdgeKernel extends EdgeKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    protected VectorEdgeKernel() {
+    }
+
+    @Override
+    protected String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    protected void classify(PixelRaster raster, int strength, int[] luminance, int[] edges) {
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int size = width * height;
+        int lanes = SPECIES.length();
+
+        int[] pixels = raster.getPixels();
+        ByteBuffer frame = raster.getFrame();
+        int i = 0;
+        if (pixels != null) {
+            for (int bound = SPECIES.loopBound(size); i < bound; i += lanes) {
+                IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+                IntVector red = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+                IntVector green = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+                IntVector blue = pixel.and(0xFF);
+                red.mul(LumaPlane.RED_WEIGHT).add(green.mul(LumaPlane.GREEN_WEIGHT))
+                        .add(blue.mul(LumaPlane.BLUE_WEIGHT)).intoArray(luminance, i);
+            }
+        } else if (frame != null) {
+            // a raw frame is loaded straight from its buffer; RGBA just has red and blue swapped
+            int redShift = raster.isRGBA() ? 0 : 16;
+            int blueShift = 16 - redShift;
+            for (int bound = SPECIES.loopBound(size); i < bound; i += lanes) {
+                IntVector pixel = IntVector.fromByteBuffer(SPECIES, frame, i * 4, ByteOrder.LITTLE_ENDIAN);
+                IntVector red = pixel.lanewise(VectorOperators.LSHR, redShift).and(0xFF);
+                IntVector green = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+                IntVector blue = pixel.lanewise(VectorOperators.LSHR, blueShift).and(0xFF);
+                red.mul(LumaPlane.RED_WEIGHT).add(green.mul(LumaPlane.GREEN_WEIGHT))
+                        .add(blue.mul(LumaPlane.BLUE_WEIGHT)).intoArray(luminance, i);
+            }
+        }
+        for (; i < size; i++) {
+            luminance[i] = luminance(raster.get(i));
+        }
+
+        int threshold = strength * LumaPlane.SCALE;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+
+            // the pixels on the border are missing a neighbour, so they are done one at a time;
+            // everything inside goes a vector at a time. Inside, every pixel has all four
+            // neighbours, which keeps branches (and with them boxed vectors) out of the loop.
+            int x = 0;
+            if (y > 0 && y < height - 1) {
+                if (width > 0) {
+                    edges[row] = edges(raster, luminance, width, height, strength, threshold, 0, y);
+                    x = 1;
+                }
+                for (; x + lanes <= width - 1; x += lanes) {
+                    if (!classifyLanes(luminance, edges, row + x, width, threshold)) {
+                        // rare: let the scalar code settle these pixels exactly
+                        for (int lane = 0; lane < lanes; lane++) {
+                            edges[row + x + lane] = edges(raster, luminance, width, height, strength, threshold,
+                                    x + lane, y);
+                        }
+                    }
+                }
+            }
+            for (; x < width; x++) {
+                edges[row + x] = edges(raster, luminance, width, height, strength, threshold, x, y);
+            }
+        }
+    }
+
+    /*
+     * Computes the edge bits of a vector of pixels starting at index, none of them on the border
+     *
+     * @return false, without storing anything, if a difference lands exactly on the strength
+     */
+    private static boolean classifyLanes(int[] luminance, int[] edges, int index, int width, int threshold) {
+
+        IntVector current = IntVector.fromArray(SPECIES, luminance, index);
+        IntVector left = current.sub(IntVector.fromArray(SPECIES, luminance, index - 1));
+        IntVector right = current.sub(IntVector.fromArray(SPECIES, luminance, index + 1));
+        IntVector up = current.sub(IntVector.fromArray(SPECIES, luminance, index - width));
+        IntVector down = current.sub(IntVector.fromArray(SPECIES, luminance, index + width));
+
+        // everything is written out in this one method: a vector handed to a method the JIT
+        // doesn't inline gets boxed, which costs more than the whole comparison
+        IntVector low = IntVector.broadcast(SPECIES, -threshold);
+        IntVector high = IntVector.broadcast(SPECIES, threshold);
+        VectorMask<Integer> ties = left.eq(low).or(left.eq(high)).or(right.eq(low)).or(right.eq(high))
+                .or(up.eq(low)).or(up.eq(high)).or(down.eq(low)).or(down.eq(high));
+        if (ties.anyTrue()) {
+            return false;
+        }
+
+        IntVector zero = IntVector.zero(SPECIES);
+        zero.blend(DARKER_LEFT, left.lt(low)).blend(LIGHTER_LEFT, left.compare(VectorOperators.GT, high))
+                .or(zero.blend(DARKER_RIGHT, right.lt(low))
+                        .blend(LIGHTER_RIGHT, right.compare(VectorOperators.GT, high)))
+                .or(zero.blend(DARKER_UP, up.lt(low)).blend(LIGHTER_UP, up.compare(VectorOperators.GT, high)))
+                .or(zero.blend(DARKER_DOWN, down.lt(low)).blend(LIGHTER_DOWN, down.compare(VectorOperators.GT, high)))
+                .intoArray(edges, index);
+        return true;
+    }
+}